@@ -0,0 +1,74 @@
+package com.fanduel.josh.benchmark;
+
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import com.fanduel.josh.model.TestObj2;
+import com.fanduel.josh.model.TestObj3;
+import com.fanduel.josh.repository.custom.codec.AvroValueCodec;
+import com.fanduel.josh.repository.custom.codec.CompressionStats;
+import com.fanduel.josh.repository.custom.codec.JsonValueCodec;
+import com.fanduel.josh.repository.custom.codec.SmileValueCodec;
+import com.fanduel.josh.repository.custom.codec.ValueCodecs;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic inputs shared by the benchmarks, so runs on different machines see the same data.
+ */
+final class BenchmarkFixtures {
+
+    static final long SEED = 42L;
+
+    private BenchmarkFixtures() {}
+
+    static CacheDetailsConfig cacheDetailsConfig(String codec, int compressionThresholdBytes) {
+        CacheDetailsConfig.CacheDetails defaults = new CacheDetailsConfig.CacheDetails();
+        defaults.setTtlInSeconds(3600L);
+        defaults.setCodec(codec);
+        defaults.setCompressionThresholdBytes(compressionThresholdBytes);
+        CacheDetailsConfig cacheDetailsConfig = new CacheDetailsConfig();
+        cacheDetailsConfig.setDefaultConfig(defaults);
+        return cacheDetailsConfig;
+    }
+
+    static ValueCodecs valueCodecs(CacheDetailsConfig cacheDetailsConfig) {
+        JsonValueCodec json = new JsonValueCodec();
+        return new ValueCodecs(
+                List.of(json, new SmileValueCodec(), new AvroValueCodec()),
+                json,
+                new CompressionStats(),
+                cacheDetailsConfig);
+    }
+
+    static TestObj2 testObj2(Random random, String id) {
+        TestObj2 obj = new TestObj2();
+        obj.setTestString1(id);
+        obj.setTestString2(String.valueOf(random.nextInt(100)));
+        obj.setTestInteger1(random.nextInt(100));
+        obj.setTestInteger2(random.nextInt(100));
+        return obj;
+    }
+
+    /**
+     * Same shape as {@link #testObj2(Random, String)} with the fields derived from the ID, for
+     * fetchers called from several benchmark threads.
+     */
+    static TestObj2 testObj2(String id) {
+        final int hash = id.hashCode();
+        TestObj2 obj = new TestObj2();
+        obj.setTestString1(id);
+        obj.setTestString2(String.valueOf(Math.floorMod(hash, 100)));
+        obj.setTestInteger1(Math.floorMod(hash >>> 8, 100));
+        obj.setTestInteger2(Math.floorMod(hash >>> 16, 100));
+        return obj;
+    }
+
+    static TestObj3 testObj3(Random random, String id) {
+        TestObj3 obj = new TestObj3();
+        obj.setTestString1(id);
+        obj.setTestString2(String.valueOf(random.nextInt(100)));
+        obj.setTestInteger1(random.nextInt(100));
+        obj.setTestInteger2(random.nextInt(100));
+        return obj;
+    }
+}
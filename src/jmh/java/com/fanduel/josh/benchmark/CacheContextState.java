@@ -0,0 +1,74 @@
+package com.fanduel.josh.benchmark;
+
+import com.fanduel.josh.Application;
+import com.fanduel.josh.cache.RedisHeartbeat;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * The application context without its web server, backed by an embedded Redis on a free port.
+ * Pass {@code -Dbenchmark.redis.port=6379} to run against an already running Redis instead, which
+ * is needed for commands newer than the bundled server supports.
+ */
+@State(Scope.Benchmark)
+public class CacheContextState {
+
+    private static final long STARTUP_TIMEOUT_MILLIS = 10_000;
+
+    private RedisServer redisServer;
+    ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, InterruptedException {
+        int port = Integer.getInteger("benchmark.redis.port", -1);
+        if (port < 0) {
+            port = freePort();
+            redisServer = new RedisServer(port);
+            redisServer.start();
+        }
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.redis.port=" + port,
+                        "logging.level.root=WARN")
+                .run();
+        RedisHeartbeat redisHeartbeat = context.getBean(RedisHeartbeat.class);
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (!redisHeartbeat.isAlive()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Redis did not become available on port " + port);
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (context != null) {
+            context.close();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
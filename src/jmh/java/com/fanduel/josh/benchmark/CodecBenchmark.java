@@ -0,0 +1,78 @@
+package com.fanduel.josh.benchmark;
+
+import com.fanduel.josh.model.TestObj2;
+import com.fanduel.josh.model.TestObj3;
+import com.fanduel.josh.repository.custom.CacheEntry;
+import com.fanduel.josh.repository.custom.ClassKey;
+import com.fanduel.josh.repository.custom.codec.ValueCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode of a single value through {@link ValueCodecs}, per codec and with compression
+ * on (threshold 1) or off (threshold 0). Run with {@code -prof gc} for allocation per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"json", "smile", "avro"})
+    private String codec;
+
+    @Param({"0", "1"})
+    private int compressionThresholdBytes;
+
+    private ValueCodecs valueCodecs;
+    private CacheEntry<TestObj2> testObj2Entry;
+    private CacheEntry<TestObj3> testObj3Entry;
+    private byte[] encodedTestObj2;
+    private byte[] encodedTestObj3;
+
+    @Setup
+    public void setup() throws IOException {
+        valueCodecs = BenchmarkFixtures.valueCodecs(
+                BenchmarkFixtures.cacheDetailsConfig(codec, compressionThresholdBytes));
+        Random random = new Random(BenchmarkFixtures.SEED);
+        testObj2Entry = CacheEntry.of(BenchmarkFixtures.testObj2(random, "id-1"), 1_700_000_000_000L, 12L);
+        testObj3Entry = CacheEntry.of(BenchmarkFixtures.testObj3(random, "id-1"), 1_700_000_000_000L, 12L);
+        encodedTestObj2 = valueCodecs.encode(ClassKey.testObj2, testObj2Entry);
+        encodedTestObj3 = valueCodecs.encode(ClassKey.testObj3, testObj3Entry);
+    }
+
+    @Benchmark
+    public byte[] encodeTestObj2() throws IOException {
+        return valueCodecs.encode(ClassKey.testObj2, testObj2Entry);
+    }
+
+    @Benchmark
+    public CacheEntry<TestObj2> decodeTestObj2() throws IOException {
+        return valueCodecs.decodeEntry(ClassKey.testObj2, encodedTestObj2, TestObj2.class);
+    }
+
+    @Benchmark
+    public byte[] encodeTestObj3() throws IOException {
+        return valueCodecs.encode(ClassKey.testObj3, testObj3Entry);
+    }
+
+    @Benchmark
+    public CacheEntry<TestObj3> decodeTestObj3() throws IOException {
+        return valueCodecs.decodeEntry(ClassKey.testObj3, encodedTestObj3, TestObj3.class);
+    }
+}
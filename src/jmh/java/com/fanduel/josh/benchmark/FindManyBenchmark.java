@@ -0,0 +1,70 @@
+package com.fanduel.josh.benchmark;
+
+import com.fanduel.josh.model.TestObj2;
+import com.fanduel.josh.repository.custom.CacheEntry;
+import com.fanduel.josh.repository.custom.ReactiveCaffeineRepository;
+import com.fanduel.josh.repository.custom.ReactiveRedisRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code findManyEntries} for a batch of present keys: the in-memory tier measures key generation
+ * and result assembly alone, the Redis tier adds the MGET round trip and decoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindManyBenchmark {
+
+    @Param({"10", "100"})
+    private int batchSize;
+
+    private ReactiveRedisRepository reactiveRedisRepository;
+    private ReactiveCaffeineRepository reactiveCaffeineRepository;
+    private List<String> ids;
+
+    @Setup
+    public void setup(CacheContextState state) {
+        reactiveRedisRepository = state.getBean(ReactiveRedisRepository.class);
+        reactiveCaffeineRepository = state.getBean(ReactiveCaffeineRepository.class);
+        Random random = new Random(BenchmarkFixtures.SEED);
+        ids = new ArrayList<>(batchSize);
+        Map<String, TestObj2> values = new HashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            String id = "find-many-" + i;
+            ids.add(id);
+            values.put(id, BenchmarkFixtures.testObj2(random, id));
+        }
+        reactiveRedisRepository.saveMany(values).block();
+        reactiveCaffeineRepository.saveMany(values).block();
+    }
+
+    @Benchmark
+    public Map<String, CacheEntry<TestObj2>> redis() {
+        return reactiveRedisRepository.findManyEntries(TestObj2.class, ids).block();
+    }
+
+    @Benchmark
+    public Map<String, CacheEntry<TestObj2>> inMemory() {
+        return reactiveCaffeineRepository.findManyEntries(TestObj2.class, ids).block();
+    }
+}
@@ -0,0 +1,116 @@
+package com.fanduel.josh.benchmark;
+
+import com.fanduel.josh.cache.CacheConfig;
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import com.fanduel.josh.model.ComplexId3;
+import com.fanduel.josh.model.TestObj2;
+import com.fanduel.josh.repository.custom.CacheKeyResolver;
+import com.fanduel.josh.repository.custom.ClassKey;
+import com.fanduel.josh.repository.custom.KeyEncoder;
+import com.fanduel.josh.repository.custom.ObjectKeyExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a type and an ID into a Redis key, paid once per key on every cache call. The
+ * {@code *Baseline} benchmarks reproduce the earlier stream-based lookup and per-key string and
+ * byte array building; run with {@code -prof gc} to compare allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyGenerationBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    private ObjectKeyExtractor objectKeyExtractor;
+    private CacheKeyResolver cacheKeyResolver;
+    private KeyEncoder keyEncoder;
+    private String stringId;
+    private Integer integerId;
+    private ComplexId3 complexId;
+    private List<String> batchIds;
+
+    @Setup
+    public void setup() {
+        objectKeyExtractor = new ObjectKeyExtractor();
+        cacheKeyResolver = new CacheKeyResolver(objectKeyExtractor, new CacheDetailsConfig());
+        keyEncoder = new KeyEncoder(objectKeyExtractor, cacheKeyResolver);
+        stringId = "id-12345";
+        integerId = 12345;
+        complexId = new ComplexId3("id-12345");
+        batchIds = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batchIds.add("id-" + i);
+        }
+    }
+
+    @Benchmark
+    public String generateSingletonKey() {
+        return ClassKey.testObj.generateKey();
+    }
+
+    @Benchmark
+    public String generateKeyFromString() {
+        return cacheKeyResolver.generateKey(ClassKey.testObj2, objectKeyExtractor.extractKey(stringId));
+    }
+
+    @Benchmark
+    public String generateKeyFromInteger() {
+        return cacheKeyResolver.generateKey(ClassKey.testObj2, objectKeyExtractor.extractKey(integerId));
+    }
+
+    @Benchmark
+    public String generateKeyFromComplexId() {
+        return cacheKeyResolver.generateKey(ClassKey.testObj3, objectKeyExtractor.extractKey(complexId));
+    }
+
+    @Benchmark
+    public Optional<ClassKey> classKeyFromClass() {
+        return ClassKey.fromClass(TestObj2.class);
+    }
+
+    @Benchmark
+    public Optional<ClassKey> classKeyFromClassBaseline() {
+        return Arrays.stream(ClassKey.values())
+                .filter(classKey -> classKey.getType().equals(TestObj2.class))
+                .findFirst();
+    }
+
+    @Benchmark
+    public List<ByteBuffer> encodeBatchKeys() {
+        return keyEncoder.encodeKeys(ClassKey.fromClass(TestObj2.class).orElseThrow(), batchIds);
+    }
+
+    // Key strings joined per ID, then encoded one by one the way the String key serializer does.
+    @Benchmark
+    public List<byte[]> encodeBatchKeysBaseline() {
+        final ClassKey classKey = classKeyFromClassBaseline().orElseThrow();
+        final List<byte[]> keys = new ArrayList<>(batchIds.size());
+        for (String id : batchIds) {
+            final String key = classKey.getKey() + CacheConfig.KEY_DELIMITER
+                    + String.join(CacheConfig.KEY_DELIMITER, objectKeyExtractor.extractKey(id));
+            keys.add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        return keys;
+    }
+}
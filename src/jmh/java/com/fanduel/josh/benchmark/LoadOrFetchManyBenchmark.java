@@ -0,0 +1,88 @@
+package com.fanduel.josh.benchmark;
+
+import com.fanduel.josh.cache.CacheLoader;
+import com.fanduel.josh.model.TestObj2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The full {@link CacheLoader#loadOrFetchManyById} path. {@code hit} requests only IDs that are
+ * already cached, {@code miss} only IDs never seen before, so every call reaches the fetcher and
+ * the write-behind queue. The fetcher itself is free so only cache overhead is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoadOrFetchManyBenchmark {
+
+    private static final int KEY_SPACE = 10_000;
+
+    @Param({"10", "100"})
+    private int batchSize;
+
+    private final AtomicLong missSequence = new AtomicLong();
+    private CacheLoader cacheLoader;
+    private Function<Set<String>, Map<String, TestObj2>> fetcher;
+    private List<List<String>> hitBatches;
+
+    @Setup
+    public void setup(CacheContextState state) {
+        cacheLoader = state.getBean(CacheLoader.class);
+        // Values are derived from the ID alone, so the fetcher shares no state across threads.
+        fetcher = missingIds -> missingIds.stream()
+                .collect(Collectors.toMap(Function.identity(), BenchmarkFixtures::testObj2));
+        hitBatches = new ArrayList<>(KEY_SPACE / batchSize);
+        for (int start = 0; start < KEY_SPACE; start += batchSize) {
+            List<String> batch = new ArrayList<>(batchSize);
+            for (int i = start; i < start + batchSize; i++) {
+                batch.add("hit-" + i);
+            }
+            hitBatches.add(batch);
+            cacheLoader.loadOrFetchManyByIdBlocking(TestObj2.class, batch, fetcher).block();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final SplittableRandom random = new SplittableRandom(BenchmarkFixtures.SEED);
+    }
+
+    @Benchmark
+    public Map<String, TestObj2> hit(ThreadState threadState) {
+        List<String> ids = hitBatches.get(threadState.random.nextInt(hitBatches.size()));
+        return cacheLoader.loadOrFetchManyByIdBlocking(TestObj2.class, ids, fetcher).block();
+    }
+
+    @Benchmark
+    public Map<String, TestObj2> miss() {
+        List<String> ids = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ids.add("miss-" + missSequence.incrementAndGet());
+        }
+        return cacheLoader.loadOrFetchManyByIdBlocking(TestObj2.class, ids, fetcher).block();
+    }
+}
@@ -0,0 +1,281 @@
+package com.fanduel.josh.loadtest;
+
+import com.fanduel.josh.Application;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives the {@code /test2_x} endpoints with a closed workload of {@code concurrency} workers
+ * issuing requests back to back, and reports throughput and latency percentiles per target plus
+ * a per-second timeline, which is where the effect of a Redis outage shows. See
+ * {@link LoadTestSettings} for the options.
+ */
+@Slf4j
+public class LoadTest {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final LoadTestSettings settings;
+    private final WebClient webClient;
+    private final ZipfianKeys keys;
+    private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+    private final Recorder timelineRecorder = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final LongAdder timelineErrors = new LongAdder();
+    private volatile boolean recording;
+
+    LoadTest(LoadTestSettings settings, String baseUrl) {
+        this.settings = settings;
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("loadtest")
+                .maxConnections(settings.getConcurrency())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(
+                        HttpClient.create(connectionProvider)))
+                .build();
+        this.keys = new ZipfianKeys(settings.getKeySpace(), settings.getZipfExponent(), settings.getHitRatio());
+        for (String target : settings.getTargets()) {
+            recorders.put(target, new Recorder(MAX_LATENCY_NANOS, 3));
+            errors.put(target, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        RedisServer redisServer = null;
+        ConfigurableApplicationContext context = null;
+        String baseUrl = settings.getBaseUrl();
+        String redisHost = settings.getRedisHost();
+        int redisPort = settings.getRedisPort();
+        if (settings.isCluster()) {
+            // Outages pause the first seed node, the others keep serving their slots.
+            String[] firstNode = settings.getRedisClusterNodes().split(",")[0].trim().split(":");
+            redisHost = firstNode[0];
+            redisPort = Integer.parseInt(firstNode[1]);
+        }
+        try {
+            if (baseUrl.isEmpty()) {
+                if (redisPort < 0) {
+                    redisPort = freePort();
+                    redisServer = new RedisServer(redisPort);
+                    redisServer.start();
+                }
+                context = new SpringApplicationBuilder(Application.class)
+                        .properties(
+                                "server.port=0",
+                                "spring.redis.host=" + redisHost,
+                                "spring.redis.port=" + redisPort,
+                                "spring.redis.cluster.nodes=" + settings.getRedisClusterNodes(),
+                                "logging.level.root=WARN")
+                        .run();
+                baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            }
+            RedisOutage outage = settings.hasOutage()
+                    ? new RedisOutage(redisServer, redisHost, redisPort)
+                    : null;
+            new LoadTest(settings, baseUrl).run(outage);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            if (redisServer != null) {
+                redisServer.stop();
+            }
+        }
+    }
+
+    void run(RedisOutage outage) throws InterruptedException {
+        log.warn("Warming up for {}s.", settings.getWarmupSeconds());
+        drive(settings.getWarmupSeconds());
+        final Map<String, Double> cacheRequestsBefore = cacheRequests();
+        recorders.values().forEach(Recorder::reset);
+        timelineRecorder.reset();
+        recording = true;
+
+        final List<String> timeline = new ArrayList<>();
+        final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        final long startNanos = System.nanoTime();
+        scheduler.scheduleAtFixedRate(() -> {
+            Histogram second = timelineRecorder.getIntervalHistogram();
+            timeline.add(String.format("%4ds %8d req/s %6d errors  p50 %8.2fms  p99 %8.2fms",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos),
+                    second.getTotalCount(),
+                    timelineErrors.sumThenReset(),
+                    second.getValueAtPercentile(50) / 1e6,
+                    second.getValueAtPercentile(99) / 1e6));
+        }, 1, 1, TimeUnit.SECONDS);
+        if (outage != null) {
+            scheduler.schedule(() -> {
+                try {
+                    outage.run(settings.getOutageSeconds());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, settings.getOutageAtSeconds(), TimeUnit.SECONDS);
+        }
+        drive(settings.getDurationSeconds());
+        final double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        scheduler.shutdownNow();
+        recording = false;
+
+        report(elapsedSeconds, timeline, cacheRequestsBefore, cacheRequests());
+    }
+
+    private void drive(int seconds) {
+        final long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Flux.range(0, settings.getConcurrency())
+                .flatMap(worker -> {
+                    final SplittableRandom random = new SplittableRandom(settings.getSeed() + worker);
+                    return Mono.defer(() -> request(random))
+                            .repeat(() -> System.nanoTime() < endNanos);
+                }, settings.getConcurrency())
+                .blockLast();
+    }
+
+    private Mono<Void> request(SplittableRandom random) {
+        final String target = settings.getTargets().get(random.nextInt(settings.getTargets().size()));
+        final String[] parts = target.split(":");
+        final String controller = parts[0];
+        final String kind = parts[1];
+        final List<String> ids = new ArrayList<>();
+        if ("single".equals(kind)) {
+            ids.add(keys.next(random));
+        } else if ("many".equals(kind)) {
+            for (int i = 0; i < settings.getManyBatchSize(); i++) {
+                ids.add(keys.next(random));
+            }
+        }
+        final long start = System.nanoTime();
+        return webClient.get()
+                .uri(builder -> uri(builder, controller, kind, ids))
+                .retrieve()
+                .toBodilessEntity()
+                .doOnSuccess(response -> record(target, System.nanoTime() - start))
+                .doOnError(e -> recordError(target))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private static URI uri(UriBuilder builder, String controller, String kind, List<String> ids) {
+        switch (kind) {
+            case "singleton":
+                return builder.path("/" + controller).build();
+            case "single":
+                return builder.path("/" + controller + "/{id}").build(ids.get(0));
+            default:
+                builder.path("/" + controller + "/many");
+                ids.forEach(id -> builder.queryParam("id", id));
+                return builder.build();
+        }
+    }
+
+    private void record(String target, long nanos) {
+        if (recording) {
+            recorders.get(target).recordValue(Math.min(nanos, MAX_LATENCY_NANOS));
+            timelineRecorder.recordValue(Math.min(nanos, MAX_LATENCY_NANOS));
+        }
+    }
+
+    private void recordError(String target) {
+        if (recording) {
+            errors.get(target).increment();
+            timelineErrors.increment();
+        }
+    }
+
+    // Hit, stale and miss counts from the application's own metrics, so the achieved hit ratio is
+    // reported rather than the requested one. Empty when the metrics endpoint is not reachable.
+    private Map<String, Double> cacheRequests() {
+        final Map<String, Double> counts = new LinkedHashMap<>();
+        for (String result : new String[]{"hit", "stale", "absent", "miss"}) {
+            try {
+                JsonNode node = webClient.get()
+                        .uri(builder -> builder.path("/actuator/metrics/cache.requests")
+                                .queryParam("tag", "result:" + result)
+                                .build())
+                        .retrieve()
+                        .bodyToMono(JsonNode.class)
+                        .block(Duration.ofSeconds(5));
+                counts.put(result, node == null ? 0 : node.path("measurements").path(0).path("value").asDouble());
+            } catch (RuntimeException e) {
+                log.debug("Could not read cache.requests: {}", e.getMessage());
+            }
+        }
+        return counts;
+    }
+
+    private void report(double elapsedSeconds, List<String> timeline,
+                        Map<String, Double> before, Map<String, Double> after) {
+        final StringBuilder out = new StringBuilder("\n");
+        out.append(String.format("%-20s %10s %8s %10s %10s %10s %10s %10s%n",
+                "target", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        final Histogram total = new Histogram(MAX_LATENCY_NANOS, 3);
+        long totalErrors = 0;
+        for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+            Histogram histogram = entry.getValue().getIntervalHistogram();
+            long targetErrors = errors.get(entry.getKey()).sum();
+            total.add(histogram);
+            totalErrors += targetErrors;
+            appendRow(out, entry.getKey(), histogram, targetErrors, elapsedSeconds);
+        }
+        appendRow(out, "total", total, totalErrors, elapsedSeconds);
+        if (!after.isEmpty() && after.size() == before.size()) {
+            double hits = after.get("hit") - before.get("hit");
+            double stale = after.get("stale") - before.get("stale");
+            double absent = after.get("absent") - before.get("absent");
+            double misses = after.get("miss") - before.get("miss");
+            double lookups = hits + stale + absent + misses;
+            out.append(String.format("%ncache hit ratio %.2f%% (%.0f hits, %.0f stale, %.0f absent, %.0f misses)%n",
+                    lookups == 0 ? 0 : (hits + stale + absent) * 100 / lookups, hits, stale, absent, misses));
+        }
+        out.append("\ntimeline\n");
+        timeline.forEach(line -> out.append(line).append('\n'));
+        log.warn(out.toString());
+    }
+
+    private static void appendRow(StringBuilder out, String name, Histogram histogram, long errors, double seconds) {
+        out.append(String.format("%-20s %10.1f %8d %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                name,
+                histogram.getTotalCount() / seconds,
+                errors,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(90) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.fanduel.josh.loadtest;
+
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Load test settings, read from {@code -Dloadtest.*} system properties.
+ */
+@Value
+class LoadTestSettings {
+
+    /** Application to drive; when empty the application is started in-process on a random port. */
+    String baseUrl;
+    /** Redis used by the in-process application; when not set an embedded Redis is started. */
+    String redisHost;
+    int redisPort;
+    /**
+     * Comma separated {@code host:port} seed nodes of a Redis Cluster for the in-process application,
+     * for instance the one started by {@code src/loadtest/redis-cluster.sh}; takes precedence over
+     * {@code redisHost} and {@code redisPort}.
+     */
+    String redisClusterNodes;
+    /** {@code controller:kind} pairs, kind being singleton, single or many. */
+    List<String> targets;
+    int concurrency;
+    int warmupSeconds;
+    int durationSeconds;
+    int keySpace;
+    double zipfExponent;
+    /** Share of requests for keys from the key space; the rest ask for keys never requested before. */
+    double hitRatio;
+    int manyBatchSize;
+    /** Seconds into the measured run at which Redis becomes unavailable, negative for no outage. */
+    int outageAtSeconds;
+    int outageSeconds;
+    long seed;
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                System.getProperty("loadtest.baseUrl", ""),
+                System.getProperty("loadtest.redisHost", "localhost"),
+                Integer.getInteger("loadtest.redisPort", -1),
+                System.getProperty("loadtest.redisClusterNodes", ""),
+                Arrays.stream(System.getProperty("loadtest.targets",
+                                "test2_1:singleton,test2_1:single,test2_1:many,"
+                                        + "test2_2:single,test2_2:many,"
+                                        + "test2_3:single,test2_3:many")
+                                .split(","))
+                        .map(String::trim)
+                        .filter(target -> !target.isEmpty())
+                        .collect(Collectors.toList()),
+                Integer.getInteger("loadtest.concurrency", 64),
+                Integer.getInteger("loadtest.warmupSeconds", 10),
+                Integer.getInteger("loadtest.durationSeconds", 60),
+                Integer.getInteger("loadtest.keySpace", 1000),
+                Double.parseDouble(System.getProperty("loadtest.zipfExponent", "1.0")),
+                Double.parseDouble(System.getProperty("loadtest.hitRatio", "0.95")),
+                Integer.getInteger("loadtest.manyBatchSize", 10),
+                Integer.getInteger("loadtest.outageAtSeconds", -1),
+                Integer.getInteger("loadtest.outageSeconds", 10),
+                Long.getLong("loadtest.seed", 42L));
+    }
+
+    boolean isCluster() {
+        return !redisClusterNodes.isBlank();
+    }
+
+    boolean hasOutage() {
+        return outageAtSeconds >= 0 && outageSeconds > 0;
+    }
+}
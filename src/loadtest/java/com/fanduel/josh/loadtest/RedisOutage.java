@@ -0,0 +1,39 @@
+package com.fanduel.josh.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.embedded.RedisServer;
+
+/**
+ * Makes Redis unavailable for a while. An embedded server is stopped and restarted on the same
+ * port; an external one is paused with {@code CLIENT PAUSE}, which leaves connections open but
+ * unanswered, the harder case for failure detection.
+ */
+@Slf4j
+class RedisOutage {
+
+    private final RedisServer embeddedServer;
+    private final String host;
+    private final int port;
+
+    RedisOutage(RedisServer embeddedServer, String host, int port) {
+        this.embeddedServer = embeddedServer;
+        this.host = host;
+        this.port = port;
+    }
+
+    void run(int seconds) throws InterruptedException {
+        log.warn("Injecting a {}s Redis outage.", seconds);
+        if (embeddedServer != null) {
+            embeddedServer.stop();
+            Thread.sleep(seconds * 1000L);
+            embeddedServer.start();
+        } else {
+            try (Jedis jedis = new Jedis(host, port)) {
+                jedis.clientPause(seconds * 1000L);
+            }
+            Thread.sleep(seconds * 1000L);
+        }
+        log.warn("Redis outage over.");
+    }
+}
@@ -0,0 +1,38 @@
+package com.fanduel.josh.loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks keys so that key {@code k} of the key space is requested with probability proportional to
+ * {@code 1 / k^exponent}, mixed with keys that have never been requested at a rate of
+ * {@code 1 - hitRatio} to force misses.
+ */
+class ZipfianKeys {
+
+    private final double[] cumulative;
+    private final double hitRatio;
+    private final AtomicLong coldSequence = new AtomicLong();
+
+    ZipfianKeys(int keySpace, double exponent, double hitRatio) {
+        this.hitRatio = hitRatio;
+        cumulative = new double[keySpace];
+        double sum = 0;
+        for (int rank = 1; rank <= keySpace; rank++) {
+            sum += 1.0 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < keySpace; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    String next(SplittableRandom random) {
+        if (random.nextDouble() >= hitRatio) {
+            return "cold-" + coldSequence.incrementAndGet();
+        }
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return "key-" + (index >= 0 ? index : -index - 1);
+    }
+}
@@ -0,0 +1,42 @@
+#!/usr/bin/env bash
+# Starts a local Redis Cluster of three masters and three replicas on ports 7000-7005, one
+# redis-server process per node, for running the application or the load test against a cluster:
+#
+#   src/loadtest/redis-cluster.sh start
+#   mvn -P loadtest compile exec:exec \
+#       -Dloadtest.args="-Dloadtest.redisClusterNodes=127.0.0.1:7000,127.0.0.1:7001,127.0.0.1:7002"
+#   src/loadtest/redis-cluster.sh stop
+#
+# Needs redis-server and redis-cli 5 or later on the PATH. Node files live in target/redis-cluster.
+set -euo pipefail
+
+PORTS=(7000 7001 7002 7003 7004 7005)
+DIR="$(cd "$(dirname "$0")/../.." && pwd)/target/redis-cluster"
+
+start() {
+  mkdir -p "$DIR"
+  for port in "${PORTS[@]}"; do
+    mkdir -p "$DIR/$port"
+    redis-server --port "$port" --dir "$DIR/$port" --daemonize yes \
+      --cluster-enabled yes --cluster-config-file nodes.conf --cluster-node-timeout 2000 \
+      --appendonly no --save "" --logfile "$DIR/$port/redis.log"
+  done
+  local nodes=()
+  for port in "${PORTS[@]}"; do
+    nodes+=("127.0.0.1:$port")
+  done
+  redis-cli --cluster create "${nodes[@]}" --cluster-replicas 1 --cluster-yes
+}
+
+stop() {
+  for port in "${PORTS[@]}"; do
+    redis-cli -p "$port" shutdown nosave 2>/dev/null || true
+  done
+  rm -rf "$DIR"
+}
+
+case "${1:-}" in
+  start) start ;;
+  stop) stop ;;
+  *) echo "Usage: $0 start|stop" >&2; exit 1 ;;
+esac
@@ -3,6 +3,10 @@ package com.fanduel.josh.cache;
 import com.fanduel.josh.model.TestObj;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Ticker;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -20,8 +24,10 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
@@ -33,9 +39,12 @@ import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSeriali
 import org.springframework.data.redis.serializer.GenericToStringSerializer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +76,17 @@ public class CacheConfig extends CachingConfigurerSupport {
     @Value("${spring.redis.connect-timeout}")
     private long connectionTimeout;
 
+    // Comma separated host:port seed nodes, when set both factories connect to a Redis Cluster
+    // instead of spring.redis.host.
+    @Value("${spring.redis.cluster.nodes:}")
+    private String clusterNodes;
+
+    @Value("${spring.redis.cluster.max-redirects:3}")
+    private int clusterMaxRedirects;
+
+    @Value("${spring.redis.lettuce.cluster.refresh.period:30s}")
+    private Duration clusterRefreshPeriod;
+
     private final CacheDetailsConfig cacheDetailsConfig;
     public static final String KEY_DELIMITER = ":";
 
@@ -80,6 +100,9 @@ public class CacheConfig extends CachingConfigurerSupport {
     @Primary
     public JedisConnectionFactory redisConnectionFactory(
             JedisClientConfiguration jedisClientConfiguration) {
+        if (isClusterEnabled()) {
+            return new CustomJedisConnectionFactory(redisClusterConfiguration(), jedisClientConfiguration);
+        }
         RedisStandaloneConfiguration redisStandaloneConfiguration =
                 new RedisStandaloneConfiguration(redisHost, redisPort);
 
@@ -98,17 +121,61 @@ public class CacheConfig extends CachingConfigurerSupport {
     @Bean
     public ReactiveRedisConnectionFactory lettuceConnectionFactory() {
 
-        LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
-                .commandTimeout(Duration.ofSeconds(connectionReadTimeout))
-                .shutdownTimeout(Duration.ZERO)
-                .build();
+        // Reject rather than queue commands while reconnecting so RedisCircuitBreaker sees the
+        // outage immediately instead of after a timeout.
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder clientConfig = lettuceClientConfigurationBuilder();
+
+        if (isClusterEnabled()) {
+            // Slots move when nodes fail over or get resharded, the topology is refreshed
+            // periodically and whenever a MOVED/ASK redirect or a reconnect says it is stale.
+            return new LettuceConnectionFactory(
+                    redisClusterConfiguration(),
+                    clientConfig.clientOptions(ClusterClientOptions.builder()
+                                    .maxRedirects(clusterMaxRedirects)
+                                    .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                                            .enablePeriodicRefresh(clusterRefreshPeriod)
+                                            .enableAllAdaptiveRefreshTriggers()
+                                            .build())
+                                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                                    .build())
+                            .build()
+            );
+        }
 
         return new LettuceConnectionFactory(
                 new RedisStandaloneConfiguration(redisHost, redisPort),
-                clientConfig
+                standaloneClientConfiguration(clientConfig)
         );
     }
 
+    private LettuceClientConfiguration.LettuceClientConfigurationBuilder lettuceClientConfigurationBuilder() {
+        return LettuceClientConfiguration.builder()
+                .commandTimeout(Duration.ofSeconds(connectionReadTimeout))
+                .shutdownTimeout(Duration.ZERO);
+    }
+
+    private LettuceClientConfiguration standaloneClientConfiguration(
+            LettuceClientConfiguration.LettuceClientConfigurationBuilder clientConfig) {
+        return clientConfig.clientOptions(ClientOptions.builder()
+                        .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                        .build())
+                .build();
+    }
+
+    private boolean isClusterEnabled() {
+        return !clusterNodes.isBlank();
+    }
+
+    private RedisClusterConfiguration redisClusterConfiguration() {
+        RedisClusterConfiguration redisClusterConfiguration = new RedisClusterConfiguration(
+                Arrays.stream(clusterNodes.split(","))
+                        .map(String::trim)
+                        .filter(node -> !node.isEmpty())
+                        .collect(Collectors.toList()));
+        redisClusterConfiguration.setMaxRedirects(clusterMaxRedirects);
+        return redisClusterConfiguration;
+    }
+
     @Bean
     public ReactiveRedisTemplate<String, TestObj> reactiveRedisTemplate(
             ReactiveRedisConnectionFactory connectionFactory
@@ -134,6 +201,88 @@ public class CacheConfig extends CachingConfigurerSupport {
         return new ReactiveStringRedisTemplate(connectionFactory);
     }
 
+    @Bean
+    public ReactiveRedisTemplate<String, byte[]> reactiveBinaryRedisTemplate(
+            ReactiveRedisConnectionFactory connectionFactory
+    ) {
+        return binaryRedisTemplate(connectionFactory);
+    }
+
+    private static ReactiveRedisTemplate<String, byte[]> binaryRedisTemplate(
+            ReactiveRedisConnectionFactory connectionFactory) {
+        RedisSerializationContext<String, byte[]> serializationContext = RedisSerializationContext
+                .<String, byte[]>newSerializationContext(new StringRedisSerializer())
+                .value(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveRedisTemplate<>(connectionFactory, serializationContext);
+    }
+
+    /**
+     * The nodes cache entries are spread over. With {@code cache.sharding.nodes} each node gets its
+     * own connection and circuit breaker, otherwise the {@code spring.redis} connection is the only
+     * shard, reading from its replicas when {@code cache.replica-reads.nodes} lists any.
+     * Invalidation messages always go through {@code spring.redis}.
+     */
+    @Bean
+    public RedisShards redisShards(
+            ShardingConfig shardingConfig,
+            ReplicaReadConfig replicaReadConfig,
+            RedisHealthConfig redisHealthConfig,
+            ReactiveRedisTemplate<String, byte[]> reactiveBinaryRedisTemplate,
+            RedisCircuitBreaker redisCircuitBreaker
+    ) {
+        boolean replicaReads = !replicaReadConfig.getNodes().isEmpty();
+        if (replicaReads && (isClusterEnabled() || !shardingConfig.getNodes().isEmpty())) {
+            throw new IllegalStateException("cache.replica-reads.nodes cannot be used together with"
+                    + " spring.redis.cluster.nodes or cache.sharding.nodes.");
+        }
+        if (replicaReads) {
+            LettuceConnectionFactory readConnectionFactory = new LettuceConnectionFactory(
+                    replicaConfiguration(replicaReadConfig),
+                    standaloneClientConfiguration(lettuceClientConfigurationBuilder()
+                            .readFrom(ReadFrom.valueOf(replicaReadConfig.getReadFrom()))));
+            readConnectionFactory.afterPropertiesSet();
+            return RedisShards.single(new RedisShard(redisHost + ":" + redisPort, reactiveBinaryRedisTemplate,
+                    binaryRedisTemplate(readConnectionFactory), redisCircuitBreaker, null, readConnectionFactory));
+        }
+        if (shardingConfig.getNodes().isEmpty()) {
+            return RedisShards.single(
+                    new RedisShard(redisHost + ":" + redisPort, reactiveBinaryRedisTemplate, redisCircuitBreaker, null));
+        }
+        if (isClusterEnabled()) {
+            throw new IllegalStateException(
+                    "cache.sharding.nodes and spring.redis.cluster.nodes cannot be used together.");
+        }
+        List<RedisShard> shards = new ArrayList<>();
+        for (String node : shardingConfig.getNodes()) {
+            String[] hostAndPort = node.trim().split(":");
+            if (hostAndPort.length != 2) {
+                throw new IllegalArgumentException("Shard node " + node + " is not host:port.");
+            }
+            LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+                    new RedisStandaloneConfiguration(hostAndPort[0], Integer.parseInt(hostAndPort[1])),
+                    standaloneClientConfiguration(lettuceClientConfigurationBuilder()));
+            connectionFactory.afterPropertiesSet();
+            shards.add(new RedisShard(node.trim(), binaryRedisTemplate(connectionFactory),
+                    new RedisCircuitBreaker(redisHealthConfig), connectionFactory));
+        }
+        return RedisShards.consistent(shards, shardingConfig.getVirtualNodes());
+    }
+
+    // The primary is listed too so Lettuce can fall back to it, it tells the roles apart itself.
+    private RedisStaticMasterReplicaConfiguration replicaConfiguration(ReplicaReadConfig replicaReadConfig) {
+        RedisStaticMasterReplicaConfiguration configuration =
+                new RedisStaticMasterReplicaConfiguration(redisHost, redisPort);
+        for (String node : replicaReadConfig.getNodes()) {
+            String[] hostAndPort = node.trim().split(":");
+            if (hostAndPort.length != 2) {
+                throw new IllegalArgumentException("Replica node " + node + " is not host:port.");
+            }
+            configuration.node(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+        }
+        return configuration;
+    }
+
     @Bean
     public SimpleCacheManager simpleCacheManager() {
         SimpleCacheManager simpleCacheManager = new SimpleCacheManager();
@@ -146,17 +295,20 @@ public class CacheConfig extends CachingConfigurerSupport {
         return simpleCacheManager;
     }
 
+    // The local tier of a TwoLevelCache, short lived as other nodes only drop their copies when
+    // an invalidation message reaches them.
     private CaffeineCache buildCache(String name) {
+        long ttlInSeconds = Optional.ofNullable(cacheDetailsConfig.get(name))
+                .map(CacheDetailsConfig.CacheDetails::getTtlInSeconds)
+                .orElse(cacheDetailsConfig.getDefaultConfig().getTtlInSeconds());
         return new CaffeineCache(
                 name,
                 Caffeine.newBuilder()
+                        .maximumSize(cacheDetailsConfig.resolve(
+                                name, CacheDetailsConfig.CacheDetails::getMaxLocalEntries, 10_000L))
                         .expireAfterWrite(
-                                Optional.ofNullable(cacheDetailsConfig.get(name))
-                                        .map(CacheDetailsConfig.CacheDetails::getTtlInSeconds)
-                                        .orElse(
-                                                cacheDetailsConfig
-                                                        .getDefaultConfig()
-                                                        .getTtlInSeconds()),
+                                Math.min(ttlInSeconds, cacheDetailsConfig.resolve(
+                                        name, CacheDetailsConfig.CacheDetails::getLocalTtlInSeconds, 60L)),
                                 TimeUnit.SECONDS)
                         .ticker(Ticker.systemTicker())
                         .build());
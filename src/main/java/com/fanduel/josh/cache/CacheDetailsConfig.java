@@ -8,6 +8,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @Component
 @EnableConfigurationProperties
@@ -23,8 +24,41 @@ public class CacheDetailsConfig {
         return Optional.ofNullable(map).map(m -> m.get(key)).orElse(null);
     }
 
+    /**
+     * Resolves a single setting for the given cache key, falling back to the default config and
+     * then to the supplied fallback when neither of them set it.
+     */
+    public <V> V resolve(String key, Function<CacheDetails, V> getter, V fallback) {
+        return Optional.ofNullable(get(key))
+                .map(getter)
+                .or(() -> Optional.ofNullable(defaultConfig).map(getter))
+                .orElse(fallback);
+    }
+
     @Data
     public static class CacheDetails {
         private Long ttlInSeconds;
+        private Long negativeTtlInSeconds;
+        private Long softTtlInSeconds;
+        private Integer maxConcurrentRefreshes;
+        private Boolean nearCacheEnabled;
+        private Long maxLocalEntries;
+        private Long localTtlInSeconds;
+        private Integer maxBatchSize;
+        private Integer batchConcurrency;
+        private Integer loaderThreads;
+        private Integer loaderQueueSize;
+        private Integer writeChunkSize;
+        private String codec;
+        private Integer compressionThresholdBytes;
+        private Integer compressionLevel;
+        private Integer ttlJitterPercent;
+        private Double earlyExpirationBeta;
+        private Boolean warmFailoverEnabled;
+        private String storageMode;
+        private Integer hashShards;
+        private Long expectedEntries;
+        private Boolean hashTagEnabled;
+        private Boolean replicaReadsEnabled;
     }
 }
@@ -1,16 +1,34 @@
 package com.fanduel.josh.cache;
 
-import com.fanduel.josh.repository.custom.ReactiveCaffeineRepository;
+import com.fanduel.josh.cache.metrics.CacheMetrics;
+import com.fanduel.josh.repository.custom.CacheEntry;
+import com.fanduel.josh.repository.custom.CacheKeyResolver;
+import com.fanduel.josh.repository.custom.ClassKey;
 import com.fanduel.josh.repository.custom.ReactiveCrudRepository;
-import com.fanduel.josh.repository.custom.ReactiveRedisRepository;
+import com.fanduel.josh.repository.custom.ReactiveFailoverRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 @Slf4j
@@ -18,59 +36,414 @@ import java.util.function.Supplier;
 @RequiredArgsConstructor
 public class CacheLoader {
 
-    private final ReactiveRedisRepository reactiveRedisRepository;
-    private final ReactiveCaffeineRepository reactiveCaffeineRepository;
-    private final RedisHeartbeat redisHeartbeat;
+    private final ReactiveFailoverRepository reactiveFailoverRepository;
+    private final InFlightRequests inFlightRequests;
+    private final CacheKeyResolver cacheKeyResolver;
+    private final CacheDetailsConfig cacheDetailsConfig;
+    private final LoaderSchedulers loaderSchedulers;
+    private final WriteBehindQueue writeBehindQueue;
+    private final EvictionTombstones evictionTombstones;
+    private final CacheMetrics cacheMetrics;
 
+    private final Map<ClassKey, Semaphore> refreshPermits = new EnumMap<>(ClassKey.class);
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            refreshPermits.put(classKey, new Semaphore(classKey.getMaxConcurrentRefreshes(cacheDetailsConfig)));
+        }
+    }
+
+    /**
+     * Blocking suppliers are run on the {@link LoaderSchedulers} scheduler of the type, never on
+     * the subscribing thread.
+     */
     public <T> Mono<T> loadOrFetch(Class<T> tClass, Supplier<T> supplier) {
-        return getRepository().find(tClass)
-                .switchIfEmpty(Mono.defer(() -> Mono.just(supplier.get()))
-                        .doOnSuccess(res -> {
-                            if (res != null) {
-                                getRepository().save(res).toFuture();
-                            }
-                        })
-                );
+        final ClassKey classKey = getClassKey(tClass);
+        return loadOrFetchAsync(tClass, () -> loaderSchedulers.runBlocking(classKey, supplier));
+    }
+
+    public <T> Mono<T> loadOrFetchAsync(Class<T> tClass, Supplier<Mono<T>> supplier) {
+        final ClassKey classKey = getClassKey(tClass);
+        final String flightKey = classKey.generateKey();
+        final Supplier<Mono<T>> load = () -> Mono.defer(() -> {
+            final long mark = evictionTombstones.mark();
+            final long start = System.currentTimeMillis();
+            return supplier.get()
+                    .doOnSuccess(res -> {
+                        final long now = System.currentTimeMillis();
+                        cacheMetrics.recordLoad(classKey, true, now - start);
+                        if (res != null) {
+                            writeBehindQueue.enqueue(CacheEntry.of(res, now, now - start), mark);
+                        }
+                    })
+                    .doOnError(e -> cacheMetrics.recordLoad(classKey, false, System.currentTimeMillis() - start));
+        });
+        return getRepository().findEntry(tClass)
+                .switchIfEmpty(Mono.defer(() -> Mono.justOrEmpty(peekPending(classKey, flightKey, tClass))))
+                .map(entry -> {
+                    if (isStale(classKey, entry)) {
+                        cacheMetrics.recordStaleHits(classKey, 1);
+                        refreshInBackground(classKey, flightKey, load);
+                    } else {
+                        cacheMetrics.recordHits(classKey, 1);
+                    }
+                    return entry.getValue();
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    cacheMetrics.recordMisses(classKey, 1);
+                    return inFlightRequests.join(flightKey, load);
+                }));
+    }
+
+    public <T> Mono<T> loadOrFetchFuture(Class<T> tClass, Supplier<? extends CompletionStage<T>> supplier) {
+        return loadOrFetchAsync(tClass, () -> Mono.fromCompletionStage(supplier));
     }
 
     public <T, ID> Mono<T> loadOrFetchById(Class<T> tClass, ID id, Supplier<T> supplier) {
-        return getRepository().findOne(tClass, id)
-                .switchIfEmpty(Mono.defer(() -> Mono.just(supplier.get()))
-                        .doOnSuccess(res -> {
-                            if (res != null) {
-                                getRepository().save(res, id).toFuture();
-                            }
-                        })
-                );
+        final ClassKey classKey = getClassKey(tClass);
+        return loadOrFetchByIdAsync(tClass, id, () -> loaderSchedulers.runBlocking(classKey, supplier));
+    }
+
+    public <T, ID> Mono<T> loadOrFetchByIdAsync(Class<T> tClass, ID id, Supplier<Mono<T>> supplier) {
+        final ClassKey classKey = getClassKey(tClass);
+        final String flightKey = cacheKeyResolver.keyOf(classKey, id);
+        final Supplier<Mono<T>> load = () -> Mono.defer(() -> {
+            final long mark = evictionTombstones.mark();
+            final long start = System.currentTimeMillis();
+            return supplier.get()
+                    .doOnSuccess(res -> {
+                        final long now = System.currentTimeMillis();
+                        cacheMetrics.recordLoad(classKey, true, now - start);
+                        if (res != null) {
+                            writeBehindQueue.enqueue(CacheEntry.of(res, now, now - start), id, mark);
+                        } else if (classKey.isNegativeCachingEnabled(cacheDetailsConfig)) {
+                            writeBehindQueue.enqueue(CacheEntry.absent(tClass, now, now - start), id, mark);
+                        }
+                    })
+                    .doOnError(e -> cacheMetrics.recordLoad(classKey, false, System.currentTimeMillis() - start));
+        });
+        return getRepository().findOneEntry(tClass, id)
+                .switchIfEmpty(Mono.defer(() -> Mono.justOrEmpty(peekPending(classKey, flightKey, tClass))))
+                .map(entry -> {
+                    if (entry.isAbsent()) {
+                        cacheMetrics.recordAbsentHits(classKey, 1);
+                    } else if (isStale(classKey, entry)) {
+                        cacheMetrics.recordStaleHits(classKey, 1);
+                        refreshInBackground(classKey, flightKey, load);
+                    } else {
+                        cacheMetrics.recordHits(classKey, 1);
+                    }
+                    return Optional.ofNullable(entry.getValue());
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    cacheMetrics.recordMisses(classKey, 1);
+                    return inFlightRequests.join(flightKey, load).map(Optional::of);
+                }))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    public <T, ID> Mono<T> loadOrFetchByIdFuture(Class<T> tClass, ID id,
+                                                 Supplier<? extends CompletionStage<T>> supplier) {
+        return loadOrFetchByIdAsync(tClass, id, () -> Mono.fromCompletionStage(supplier));
     }
 
+    /**
+     * Prefer {@link #loadOrFetchManyById(Class, Collection, Function)}: the supplier has no way of
+     * knowing which IDs were misses, so it is called once for the whole request.
+     */
     public <T, ID> Mono<Map<ID, T>> loadOrFetchManyById(Class<T> tClass,
                                                         Collection<ID> ids,
                                                         Supplier<Map<ID, T>> supplier) {
-        return getRepository().findMany(tClass, ids)
-                .map(res -> {
-                    Map<ID, T> responseMap = new HashMap<>();
-                    if (res != null) {
-                        responseMap.putAll(res);
-                        ids.removeAll(responseMap.keySet());
+        final ClassKey classKey = getClassKey(tClass);
+        return loadOrFetchMany(tClass, ids,
+                missingIds -> loaderSchedulers.runBlocking(classKey, supplier),
+                Integer.MAX_VALUE, 1);
+    }
+
+    /**
+     * The fetcher is only called with IDs that missed the cache, split into batches of at most
+     * {@code maxBatchSize} and run with at most {@code batchConcurrency} batches in flight.
+     */
+    public <T, ID> Mono<Map<ID, T>> loadOrFetchManyById(Class<T> tClass,
+                                                        Collection<ID> ids,
+                                                        Function<Set<ID>, Mono<Map<ID, T>>> fetcher) {
+        final ClassKey classKey = getClassKey(tClass);
+        return loadOrFetchMany(tClass, ids, fetcher,
+                classKey.getMaxBatchSize(cacheDetailsConfig),
+                classKey.getBatchConcurrency(cacheDetailsConfig));
+    }
+
+    public <T, ID> Mono<Map<ID, T>> loadOrFetchManyByIdFuture(Class<T> tClass,
+                                                              Collection<ID> ids,
+                                                              Function<Set<ID>, ? extends CompletionStage<Map<ID, T>>> fetcher) {
+        return loadOrFetchManyById(tClass, ids, missingIds -> Mono.fromCompletionStage(fetcher.apply(missingIds)));
+    }
+
+    /**
+     * Same as {@link #loadOrFetchManyById(Class, Collection, Function)} for a blocking fetcher,
+     * which is run on the {@link LoaderSchedulers} scheduler of the type.
+     */
+    public <T, ID> Mono<Map<ID, T>> loadOrFetchManyByIdBlocking(Class<T> tClass,
+                                                                Collection<ID> ids,
+                                                                Function<Set<ID>, Map<ID, T>> fetcher) {
+        final ClassKey classKey = getClassKey(tClass);
+        return loadOrFetchManyById(tClass, ids,
+                missingIds -> loaderSchedulers.runBlocking(classKey, () -> fetcher.apply(missingIds)));
+    }
+
+    private <T, ID> Mono<Map<ID, T>> loadOrFetchMany(Class<T> tClass,
+                                                     Collection<ID> ids,
+                                                     Function<Set<ID>, Mono<Map<ID, T>>> fetcher,
+                                                     int maxBatchSize,
+                                                     int batchConcurrency) {
+        final ClassKey classKey = getClassKey(tClass);
+        final Function<Set<ID>, Mono<Map<ID, T>>> load = batch -> Mono.defer(() -> {
+            final long mark = evictionTombstones.mark();
+            final long start = System.currentTimeMillis();
+            return fetcher.apply(batch)
+                    .doOnSuccess(fetchedMap -> {
+                        final long now = System.currentTimeMillis();
+                        cacheMetrics.recordLoad(classKey, true, now - start);
+                        final Map<ID, CacheEntry<T>> entries = fetchedMap != null
+                                ? toEntries(fetchedMap, now, now - start)
+                                : new HashMap<>();
+                        // IDs the fetcher was asked for but did not return do not exist.
+                        if (classKey.isNegativeCachingEnabled(cacheDetailsConfig)) {
+                            for (ID id : batch) {
+                                if (id != null && !entries.containsKey(id)) {
+                                    entries.put(id, CacheEntry.absent(tClass, now, now - start));
+                                }
+                            }
+                        }
+                        if (!entries.isEmpty()) {
+                            writeBehindQueue.enqueueMany(entries, mark);
+                        }
+                    })
+                    .doOnError(e -> cacheMetrics.recordLoad(classKey, false, System.currentTimeMillis() - start));
+        });
+        return getRepository().findManyEntries(tClass, ids)
+                .switchIfEmpty(Mono.fromSupplier(HashMap::new))
+                .flatMap(entries -> {
+                    final Map<ID, T> responseMap = new HashMap<>();
+                    final Set<ID> staleIds = new LinkedHashSet<>();
+                    final Set<ID> absentIds = new HashSet<>();
+                    entries.forEach((id, entry) -> {
+                        if (entry.isAbsent()) {
+                            absentIds.add(id);
+                            return;
+                        }
+                        responseMap.put(id, entry.getValue());
+                        if (isStale(classKey, entry)) {
+                            staleIds.add(id);
+                        }
+                    });
+                    for (Set<ID> batch : partition(staleIds, maxBatchSize)) {
+                        refreshManyInBackground(classKey, batch, load);
                     }
-                    if (!ids.isEmpty()) {
-                        Map<ID, T> fetchedMap = supplier.get();
-                        if (fetchedMap != null) {
-                            getRepository().saveMany(fetchedMap).toFuture();
-                            responseMap.putAll(fetchedMap);
+                    for (ID id : ids) {
+                        if (id != null && !responseMap.containsKey(id) && !absentIds.contains(id)) {
+                            peekPending(classKey, cacheKeyResolver.keyOf(classKey, id), tClass)
+                                    .ifPresent(entry -> {
+                                        if (entry.isAbsent()) {
+                                            absentIds.add(id);
+                                        } else {
+                                            responseMap.put(id, entry.getValue());
+                                        }
+                                    });
                         }
                     }
-                    return responseMap;
+                    final Set<ID> missingIds = new LinkedHashSet<>(ids);
+                    missingIds.remove(null);
+                    missingIds.removeAll(responseMap.keySet());
+                    missingIds.removeAll(absentIds);
+                    cacheMetrics.recordHits(classKey, responseMap.size() - staleIds.size());
+                    cacheMetrics.recordStaleHits(classKey, staleIds.size());
+                    cacheMetrics.recordAbsentHits(classKey, absentIds.size());
+                    cacheMetrics.recordMisses(classKey, missingIds.size());
+                    if (missingIds.isEmpty()) {
+                        return Mono.just(responseMap);
+                    }
+                    return Flux.fromIterable(partition(missingIds, maxBatchSize))
+                            .flatMap(batch -> joinEach(classKey, batch, load), batchConcurrency)
+                            .doOnNext(responseMap::putAll)
+                            .then(Mono.fromSupplier(() -> responseMap));
                 });
     }
 
-    private ReactiveCrudRepository getRepository() {
-        if (redisHeartbeat.isAlive()) {
-            return reactiveRedisRepository;
+    /**
+     * Removes the entry of a type without IDs from the cache, along with any pending write of it.
+     * Loads and writes of it already in flight are not written back, see {@link EvictionTombstones}.
+     */
+    public <T> Mono<Boolean> evict(Class<T> tClass) {
+        final ClassKey classKey = getClassKey(tClass);
+        discard(classKey, classKey.generateKey());
+        return getRepository().delete(tClass);
+    }
+
+    public <T, ID> Mono<Boolean> evictById(Class<T> tClass, ID id) {
+        final ClassKey classKey = getClassKey(tClass);
+        discard(classKey, cacheKeyResolver.keyOf(classKey, id));
+        return getRepository().deleteById(tClass, id);
+    }
+
+    /**
+     * Evicts the given IDs with one batched delete and returns how many entries were removed.
+     */
+    public <T, ID> Mono<Long> evictManyById(Class<T> tClass, Collection<ID> ids) {
+        final ClassKey classKey = getClassKey(tClass);
+        final Set<ID> distinct = new LinkedHashSet<>(ids);
+        distinct.remove(null);
+        for (ID id : distinct) {
+            discard(classKey, cacheKeyResolver.keyOf(classKey, id));
+        }
+        return reactiveFailoverRepository.deleteManyById(tClass, distinct);
+    }
+
+    // The repository records the eviction tombstone, this frees the queue slot right away.
+    private void discard(ClassKey classKey, String key) {
+        writeBehindQueue.discard(classKey, key);
+    }
+
+    private <T> Optional<CacheEntry<T>> peekPending(ClassKey classKey, String key, Class<T> tClass) {
+        final Optional<CacheEntry<T>> pending = writeBehindQueue.peek(classKey, key, tClass);
+        cacheMetrics.recordTierGets(classKey, CacheMetrics.Tier.PENDING, pending.isPresent() ? 1 : 0, pending.isPresent() ? 0 : 1);
+        return pending;
+    }
+
+    private boolean isStale(ClassKey classKey, CacheEntry<?> entry) {
+        final long now = System.currentTimeMillis();
+        long softTtlInSeconds = classKey.getSoftTtlInSeconds(cacheDetailsConfig);
+        if (softTtlInSeconds > 0 && entry.isOlderThan(TimeUnit.SECONDS.toMillis(softTtlInSeconds), now)) {
+            return true;
+        }
+        return shouldExpireEarly(classKey, entry, now);
+    }
+
+    /**
+     * Probabilistic early expiration (XFetch): each read refreshes the entry with a probability
+     * that grows as it nears expiry and with how long it took to load, so expensive hot keys are
+     * usually reloaded by one reader shortly before they expire rather than by all of them after.
+     * Expiry is taken as the TTL less its maximum jitter, the earliest Redis may drop the key.
+     */
+    private boolean shouldExpireEarly(ClassKey classKey, CacheEntry<?> entry, long now) {
+        final double beta = classKey.getEarlyExpirationBeta(cacheDetailsConfig);
+        final long ttlInSeconds = classKey.getTtlInSeconds(cacheDetailsConfig);
+        if (beta <= 0 || ttlInSeconds <= 0
+                || entry.getWrittenAtMillis() == CacheEntry.UNKNOWN || entry.getLoadMillis() == CacheEntry.UNKNOWN) {
+            return false;
+        }
+        final int jitterPercent = Math.min(Math.max(classKey.getTtlJitterPercent(cacheDetailsConfig), 0), 100);
+        final long expiresAtMillis = entry.getWrittenAtMillis()
+                + TimeUnit.SECONDS.toMillis(ttlInSeconds) * (100 - jitterPercent) / 100;
+        final double earlyByMillis = -entry.getLoadMillis() * beta
+                * Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+        return now + earlyByMillis >= expiresAtMillis;
+    }
+
+    private static <ID, T> Map<ID, CacheEntry<T>> toEntries(Map<ID, T> values, long writtenAtMillis, long loadMillis) {
+        final Map<ID, CacheEntry<T>> entries = new HashMap<>();
+        values.forEach((id, value) -> {
+            if (id != null && value != null) {
+                entries.put(id, CacheEntry.of(value, writtenAtMillis, loadMillis));
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Reloads a stale entry without making the caller wait for it. Refreshes join any load already
+     * in flight for the key, and at most {@code maxConcurrentRefreshes} run per type; when none is
+     * free the entry keeps being served until a later read finds a permit or it hard-expires.
+     */
+    private <T> void refreshInBackground(ClassKey classKey, String flightKey, Supplier<Mono<T>> load) {
+        final Semaphore permits = refreshPermits.get(classKey);
+        if (!permits.tryAcquire()) {
+            return;
         }
-        return reactiveCaffeineRepository;
+        inFlightRequests.join(flightKey, load)
+                .doFinally(signal -> permits.release())
+                .subscribe(
+                        res -> log.debug("Refreshed {} in background.", flightKey),
+                        e -> log.warn("Background refresh of {} failed: {}", flightKey, e.getMessage()));
     }
 
+    /**
+     * Same as {@link #refreshInBackground} for a batch of IDs, each of which joins any load already
+     * in flight for it.
+     */
+    private <T, ID> void refreshManyInBackground(ClassKey classKey, Set<ID> ids,
+                                                 Function<Set<ID>, Mono<Map<ID, T>>> load) {
+        final Semaphore permits = refreshPermits.get(classKey);
+        if (!permits.tryAcquire()) {
+            return;
+        }
+        joinEach(classKey, ids, load)
+                .doFinally(signal -> permits.release())
+                .subscribe(
+                        res -> log.debug("Refreshed {} {} entries in background.", res.size(), classKey.getKey()),
+                        e -> log.warn("Background refresh of {} {} entries failed: {}", ids.size(), classKey.getKey(), e.getMessage()));
+    }
+
+    /**
+     * Loads the given IDs, coalescing per ID: IDs already being loaded, by a single or a batch load,
+     * join that load and the rest are loaded by one call of {@code load}.
+     */
+    private <T, ID> Mono<Map<ID, T>> joinEach(ClassKey classKey, Set<ID> ids, Function<Set<ID>, Mono<Map<ID, T>>> load) {
+        final Map<String, ID> idsByKey = new LinkedHashMap<>();
+        for (ID id : ids) {
+            idsByKey.put(cacheKeyResolver.keyOf(classKey, id), id);
+        }
+        final Map<String, Mono<T>> flights = inFlightRequests.joinEach(idsByKey.keySet(), keys -> {
+            final Set<ID> batch = new LinkedHashSet<>();
+            keys.forEach(key -> batch.add(idsByKey.get(key)));
+            return load.apply(batch)
+                    .map(values -> {
+                        final Map<String, T> byKey = new HashMap<>();
+                        keys.forEach(key -> {
+                            final T value = values.get(idsByKey.get(key));
+                            if (value != null) {
+                                byKey.put(key, value);
+                            }
+                        });
+                        return byKey;
+                    });
+        });
+        return Flux.fromIterable(flights.entrySet())
+                .flatMap(flight -> flight.getValue().map(value -> Map.entry(idsByKey.get(flight.getKey()), value)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private static <ID> List<Set<ID>> partition(Set<ID> ids, int maxBatchSize) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        if (ids.size() <= maxBatchSize) {
+            return List.of(ids);
+        }
+        final List<Set<ID>> batches = new ArrayList<>(ids.size() / maxBatchSize + 1);
+        Set<ID> batch = new LinkedHashSet<>();
+        for (ID id : ids) {
+            batch.add(id);
+            if (batch.size() == maxBatchSize) {
+                batches.add(batch);
+                batch = new LinkedHashSet<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private ReactiveCrudRepository getRepository() {
+        return reactiveFailoverRepository;
+    }
+
+    private ClassKey getClassKey(Class<?> type) {
+        return ClassKey.fromClass(type)
+                .orElseThrow(() ->
+                        new RuntimeException("Type " + type.getName() + " is not registered in ClassKey enum."));
+    }
 
 }
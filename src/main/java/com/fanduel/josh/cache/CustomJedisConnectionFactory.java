@@ -1,6 +1,7 @@
 package com.fanduel.josh.cache;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
@@ -21,6 +22,12 @@ public class CustomJedisConnectionFactory extends JedisConnectionFactory {
         super(redisStandaloneConfiguration, redisClientConfiguration);
     }
 
+    public CustomJedisConnectionFactory(
+            RedisClusterConfiguration redisClusterConfiguration,
+            JedisClientConfiguration redisClientConfiguration) {
+        super(redisClusterConfiguration, redisClientConfiguration);
+    }
+
     // Note: can be used to help with with retry logic
     @Override
     protected Jedis fetchJedisConnector() {
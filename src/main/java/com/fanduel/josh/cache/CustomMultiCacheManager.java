@@ -1,40 +1,143 @@
 package com.fanduel.josh.cache;
 
+import com.fanduel.josh.repository.custom.CacheEntry;
+import com.fanduel.josh.repository.custom.ReactiveNearCacheRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Serves every cache as a {@link TwoLevelCache} of the {@link SimpleCacheManager} Caffeine cache
+ * over the {@link RedisCacheManager} cache of the same name. Names without a Caffeine cache, which
+ * are not in {@link CacheKey}, are served by Redis alone.
+ * <p>
+ * Invalidations go over the near cache channel, with the cache name prefixed so they never match a
+ * near-cached type, in the same {@code node|name|writtenAt key} format.
+ * <p>
+ * When the {@link RedisCircuitBreaker} closes again every cache first replays the writes and
+ * evictions its L1 took during the outage to Redis, and only then starts from an empty L1.
+ */
 @Slf4j
 @RequiredArgsConstructor
 @Component
 public class CustomMultiCacheManager implements CacheManager {
 
-    private final RedisHeartbeat connectionAliveAware;
+    private static final String MESSAGE_DELIMITER = "|";
+    private static final String CACHE_NAME_PREFIX = "spring:";
+
+    private final RedisCircuitBreaker redisCircuitBreaker;
     private final RedisCacheManager redisCacheManager;
     private final SimpleCacheManager basicCacheManager;
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private final CacheDetailsConfig cacheDetailsConfig;
     protected static final String TPP_REDIS_CACHE_MANAGER = "tpp.redis.cachemanager.";
 
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+    private Disposable invalidationSubscription;
+
+    @PostConstruct
+    protected void init() {
+        CacheKey.values().forEach(this::getCache);
+        // The listener can run on a Redis I/O thread and the replay blocks on Redis.
+        redisCircuitBreaker.addListener((from, to) -> {
+            if (to == RedisCircuitBreaker.State.CLOSED) {
+                Schedulers.boundedElastic().schedule(this::replayOutage);
+            }
+        });
+        // Messages published while we were not subscribed are lost, so every (re)subscription
+        // starts from empty local tiers.
+        invalidationSubscription = reactiveStringRedisTemplate
+                .listenToChannel(ReactiveNearCacheRepository.INVALIDATION_CHANNEL)
+                .doOnSubscribe(subscription -> caches.values().forEach(cache -> {
+                    if (cache instanceof TwoLevelCache) {
+                        ((TwoLevelCache) cache).evictLocal(TwoLevelCache.ALL_KEYS);
+                    }
+                }))
+                .map(ReactiveSubscription.Message::getMessage)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::onInvalidation);
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        if (invalidationSubscription != null) {
+            invalidationSubscription.dispose();
+        }
+    }
+
     @Override
     public Cache getCache(String name) {
-        if (this.connectionAliveAware != null && !this.connectionAliveAware.isAlive()) {
-            log.warn("Using in-memory cache for {}", name);
-            return basicCacheManager.getCache(name);
-        }
-        log.debug("Reading from redis cache for {}", name);
-        return redisCacheManager.getCache(name);
+        return caches.computeIfAbsent(name, this::compose);
     }
 
     @Override
     public Collection<String> getCacheNames() {
-        if (this.connectionAliveAware != null && !this.connectionAliveAware.isAlive()) {
-            return basicCacheManager.getCacheNames();
-        }
         return redisCacheManager.getCacheNames();
     }
+
+    private Cache compose(String name) {
+        final Cache remote = redisCacheManager.getCache(name);
+        final Cache local = basicCacheManager.getCache(name);
+        if (local == null) {
+            log.debug("No in-memory cache for {}, using redis only.", name);
+            return remote;
+        }
+        return new TwoLevelCache(name, local, remote, redisCircuitBreaker, key -> publishInvalidation(name, key),
+                cacheDetailsConfig.resolve(name, CacheDetailsConfig.CacheDetails::getMaxLocalEntries, 10_000L));
+    }
+
+    // A cache whose replay did not finish keeps its L1, the breaker has opened again and the next
+    // recovery replays the rest.
+    private void replayOutage() {
+        caches.values().forEach(cache -> {
+            if (cache instanceof TwoLevelCache) {
+                final TwoLevelCache twoLevelCache = (TwoLevelCache) cache;
+                if (twoLevelCache.replayPending()) {
+                    twoLevelCache.evictLocal(TwoLevelCache.ALL_KEYS);
+                }
+            }
+        });
+        log.info("Redis connection obtained, replayed the outage changes of the in-memory caches.");
+    }
+
+    private void publishInvalidation(String name, String key) {
+        if (!redisCircuitBreaker.isClosed()) {
+            return;
+        }
+        reactiveStringRedisTemplate.convertAndSend(ReactiveNearCacheRepository.INVALIDATION_CHANNEL,
+                        nodeId + MESSAGE_DELIMITER + CACHE_NAME_PREFIX + name + MESSAGE_DELIMITER
+                                + CacheEntry.UNKNOWN + " " + key)
+                .subscribe(null, e -> log.debug("Failed to publish invalidation of {} {}: {}", name, key, e.getMessage()));
+    }
+
+    private void onInvalidation(String message) {
+        final String[] parts = message.split("\\" + MESSAGE_DELIMITER, 3);
+        if (parts.length != 3 || nodeId.equals(parts[0]) || !parts[1].startsWith(CACHE_NAME_PREFIX)) {
+            return;
+        }
+        final Cache cache = caches.get(parts[1].substring(CACHE_NAME_PREFIX.length()));
+        final int separator = parts[2].indexOf(' ');
+        if (cache instanceof TwoLevelCache && separator > 0) {
+            ((TwoLevelCache) cache).evictLocal(parts[2].substring(separator + 1));
+        }
+    }
 }
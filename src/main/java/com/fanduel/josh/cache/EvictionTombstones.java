@@ -0,0 +1,90 @@
+package com.fanduel.josh.cache;
+
+import com.fanduel.josh.repository.custom.ClassKey;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers recent evictions so a value loaded or queued before an eviction is not written back
+ * after it. Writers take a {@link #mark()} when they start loading or queue a value and check
+ * {@link #isEvictedSince} before, and again after, writing it.
+ * <p>
+ * Each type keeps as many tombstones as the write-behind queue holds writes. When more keys are
+ * evicted than that, the tombstone dropped to make room turns into a type-wide eviction up to its
+ * sequence, so older writes are skipped rather than written back.
+ */
+@Component
+@RequiredArgsConstructor
+public class EvictionTombstones {
+
+    // Far longer than any load or write-behind flush that could still be in flight.
+    private static final long MEMORY_SECONDS = 60;
+
+    private final WriteBehindConfig writeBehindConfig;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<ClassKey, Cache<String, Long>> evictedAt = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, AtomicLong> clearedAt = new EnumMap<>(ClassKey.class);
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            final AtomicLong cleared = new AtomicLong();
+            clearedAt.put(classKey, cleared);
+            evictedAt.put(classKey, Caffeine.newBuilder()
+                    .maximumSize(writeBehindConfig.getCapacity())
+                    .expireAfterWrite(MEMORY_SECONDS, TimeUnit.SECONDS)
+                    .executor(Runnable::run)
+                    // Called synchronously as a tombstone is dropped, so there is no window in
+                    // which neither it nor the type-wide eviction covers its key.
+                    .writer(new CacheWriter<String, Long>() {
+                        @Override
+                        public void write(@NonNull String key, @NonNull Long sequence) {
+                        }
+
+                        @Override
+                        public void delete(@NonNull String key, @Nullable Long sequence, @NonNull RemovalCause cause) {
+                            if (cause == RemovalCause.SIZE && sequence != null) {
+                                cleared.accumulateAndGet(sequence, Math::max);
+                            }
+                        }
+                    })
+                    .<String, Long>build());
+        }
+    }
+
+    public long mark() {
+        return sequence.get();
+    }
+
+    public void evict(ClassKey classKey, String key) {
+        evictedAt.get(classKey).put(key, sequence.incrementAndGet());
+    }
+
+    /**
+     * Evicts every key of the type.
+     */
+    public void evictAll(ClassKey classKey) {
+        clearedAt.get(classKey).accumulateAndGet(sequence.incrementAndGet(), Math::max);
+    }
+
+    public boolean isEvictedSince(ClassKey classKey, String key, long mark) {
+        if (clearedAt.get(classKey).get() > mark) {
+            return true;
+        }
+        final Long evicted = evictedAt.get(classKey).getIfPresent(key);
+        return evicted != null && evicted > mark;
+    }
+}
@@ -0,0 +1,25 @@
+package com.fanduel.josh.cache;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for types stored with {@code storageMode: hash}. Every {@code sweepIntervalMillis} the
+ * next {@code sweepBatchSize} fields of each shard are checked and the expired ones removed.
+ * {@code maxFieldsPerHash} should not exceed the server's {@code hash-max-listpack-entries}
+ * ({@code hash-max-ziplist-entries} before Redis 7), 128 by default.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(value = "cache.hash-storage")
+@Data
+@NoArgsConstructor
+public class HashStorageConfig {
+
+    private long sweepIntervalMillis = 1000;
+    private int sweepBatchSize = 500;
+    private int maxFieldsPerHash = 128;
+}
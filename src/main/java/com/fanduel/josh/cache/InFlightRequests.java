@@ -0,0 +1,62 @@
+package com.fanduel.josh.cache;
+
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight registry: concurrent callers joining the same key share one call of the source,
+ * whose result is cached for everyone who joined. The entry is removed as soon as the call
+ * completes or errors, so failures are never kept and the next caller starts a fresh call. A call
+ * runs to completion even when all of its callers cancel, as its result is what gets cached.
+ */
+@Component
+public class InFlightRequests {
+
+    private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> join(String key, Supplier<Mono<T>> source) {
+        return Mono.defer(() -> (Mono<T>) inFlight.computeIfAbsent(key, k -> share(k, source)));
+    }
+
+    /**
+     * Joins the flight of each of the given keys. The keys without one share a single call of
+     * {@code source}, which is given those keys and returns their values by key, so overlapping
+     * batches only load each key once. A flight completes empty when its key has no value.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Map<String, Mono<T>> joinEach(Collection<String> keys, Function<Set<String>, Mono<Map<String, T>>> source) {
+        final Set<String> leading = new LinkedHashSet<>();
+        final Mono<Map<String, T>> batch = Mono.defer(() -> source.apply(Set.copyOf(leading))).cache();
+        final Map<String, Mono<T>> flights = new LinkedHashMap<>();
+        for (String key : keys) {
+            flights.put(key, (Mono<T>) inFlight.computeIfAbsent(key, k -> {
+                leading.add(k);
+                return share(k, () -> batch.flatMap(values -> Mono.justOrEmpty(values.get(k))));
+            }));
+        }
+        return flights;
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+
+    private <T> Mono<T> share(String key, Supplier<Mono<T>> source) {
+        final AtomicReference<Mono<T>> shared = new AtomicReference<>();
+        shared.set(Mono.defer(source)
+                .doFinally(signal -> inFlight.remove(key, shared.get()))
+                .cache());
+        return shared.get();
+    }
+}
@@ -0,0 +1,65 @@
+package com.fanduel.josh.cache;
+
+import com.fanduel.josh.repository.custom.ClassKey;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * One bounded scheduler per {@link ClassKey} for blocking loaders, so a slow backend for one type
+ * can neither pin the calling (event loop) threads nor starve the loaders of other types.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LoaderSchedulers {
+
+    private static final int THREAD_TTL_SECONDS = 60;
+
+    private final CacheDetailsConfig cacheDetailsConfig;
+
+    private final Map<ClassKey, Scheduler> schedulers = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, LongAdder> rejections = new EnumMap<>(ClassKey.class);
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            schedulers.put(classKey, Schedulers.newBoundedElastic(
+                    classKey.getLoaderThreads(cacheDetailsConfig),
+                    classKey.getLoaderQueueSize(cacheDetailsConfig),
+                    "cache-loader-" + classKey.getKey(),
+                    THREAD_TTL_SECONDS,
+                    true));
+            rejections.put(classKey, new LongAdder());
+        }
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        schedulers.values().forEach(Scheduler::dispose);
+    }
+
+    public <T> Mono<T> runBlocking(ClassKey classKey, Supplier<T> supplier) {
+        return Mono.fromSupplier(supplier)
+                .subscribeOn(schedulers.get(classKey))
+                .doOnError(RejectedExecutionException.class, e -> {
+                    rejections.get(classKey).increment();
+                    log.warn("Loader queue for {} is full, rejecting load.", classKey.getKey());
+                });
+    }
+
+    public long getRejectedCount(ClassKey classKey) {
+        return rejections.get(classKey).sum();
+    }
+}
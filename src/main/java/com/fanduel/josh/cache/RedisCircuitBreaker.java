@@ -0,0 +1,182 @@
+package com.fanduel.josh.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import io.lettuce.core.RedisConnectionException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * Tracks Redis health from the outcome and latency of the reactive commands themselves.
+ * <ul>
+ *     <li>CLOSED: commands go to Redis, {@code failureThreshold} consecutive failed or slow ones open it.</li>
+ *     <li>OPEN: commands fail fast without touching Redis until {@code openDurationMillis} has passed.</li>
+ *     <li>HALF_OPEN: commands (usually {@link RedisHeartbeat} pings) are let through, one failure
+ *     re-opens it and {@code halfOpenSuccessThreshold} consecutive successes close it.</li>
+ * </ul>
+ * Multi-key commands go through {@link #monitorBulk(Mono)} instead, as their latency grows with
+ * the number of keys and says little about the health of Redis.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final RedisHealthConfig redisHealthConfig;
+
+    // Starts half-open so the first successful pings close it, as Redis is unknown until then.
+    private final AtomicReference<Snapshot> snapshot =
+            new AtomicReference<>(new Snapshot(State.HALF_OPEN, System.nanoTime()));
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+    private final List<BiConsumer<State, State>> listeners = new CopyOnWriteArrayList<>();
+
+    public State getState() {
+        return snapshot.get().getState();
+    }
+
+    public boolean isClosed() {
+        return getState() == State.CLOSED;
+    }
+
+    public void addListener(BiConsumer<State, State> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Whether a health probe should be sent now. Moves an open breaker whose open period has
+     * elapsed to half-open.
+     */
+    public boolean isProbeAllowed() {
+        final Snapshot current = snapshot.get();
+        if (current.getState() != State.OPEN) {
+            return true;
+        }
+        if (System.nanoTime() - current.getSinceNanos()
+                < TimeUnit.MILLISECONDS.toNanos(redisHealthConfig.getOpenDurationMillis())) {
+            return false;
+        }
+        transition(current, State.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * Runs the command with the configured timeout and records its outcome. Fails fast with a
+     * {@link RedisConnectionFailureException} while the breaker is open.
+     */
+    public <T> Mono<T> monitor(Mono<T> command) {
+        return Mono.defer(() -> {
+            if (getState() == State.OPEN) {
+                return Mono.error(new RedisConnectionFailureException("Redis circuit breaker is open."));
+            }
+            final long start = System.nanoTime();
+            return command
+                    .timeout(Duration.ofMillis(redisHealthConfig.getCommandTimeoutMillis()))
+                    .doOnSuccess(res -> onSuccess(System.nanoTime() - start))
+                    .doOnError(this::onFailure);
+        });
+    }
+
+    /**
+     * Same as {@link #monitor(Mono)} for commands on many keys, such as MGET, write scripts and
+     * scans. They get the longer {@code bulkCommandTimeoutMillis}, so writes Redis is still
+     * applying are rarely abandoned, and only connection failures count against Redis: neither
+     * their latency nor their timeouts do, and their successes do not close a half-open breaker.
+     */
+    public <T> Mono<T> monitorBulk(Mono<T> command) {
+        return Mono.defer(() -> {
+            if (getState() == State.OPEN) {
+                return Mono.error(new RedisConnectionFailureException("Redis circuit breaker is open."));
+            }
+            return command
+                    .timeout(Duration.ofMillis(redisHealthConfig.getBulkCommandTimeoutMillis()))
+                    .doOnSuccess(res -> {
+                        if (getState() == State.CLOSED) {
+                            consecutiveFailures.set(0);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (isConnectionFailure(e)) {
+                            onFailure(e);
+                        }
+                    });
+        });
+    }
+
+    public void onSuccess(long latencyNanos) {
+        if (latencyNanos > TimeUnit.MILLISECONDS.toNanos(redisHealthConfig.getSlowCallThresholdMillis())) {
+            recordFailure("slow call of " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + "ms");
+            return;
+        }
+        consecutiveFailures.set(0);
+        final Snapshot current = snapshot.get();
+        if (current.getState() == State.HALF_OPEN
+                && halfOpenSuccesses.incrementAndGet() >= redisHealthConfig.getHalfOpenSuccessThreshold()) {
+            transition(current, State.CLOSED);
+        }
+    }
+
+    public void onFailure(Throwable throwable) {
+        recordFailure(throwable.getClass().getSimpleName() + ": " + throwable.getMessage());
+    }
+
+    private void recordFailure(String reason) {
+        final Snapshot current = snapshot.get();
+        if (current.getState() == State.HALF_OPEN) {
+            log.debug("Redis probe failed ({}).", reason);
+            transition(current, State.OPEN);
+        } else if (current.getState() == State.CLOSED
+                && consecutiveFailures.incrementAndGet() >= redisHealthConfig.getFailureThreshold()) {
+            log.error("Redis connection failed ({}). Falling back to in-memory cache.", reason);
+            transition(current, State.OPEN);
+        }
+    }
+
+    private static boolean isConnectionFailure(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RedisConnectionFailureException
+                    || cause instanceof RedisConnectionException
+                    || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void transition(Snapshot from, State to) {
+        if (!snapshot.compareAndSet(from, new Snapshot(to, System.nanoTime()))) {
+            return;
+        }
+        consecutiveFailures.set(0);
+        halfOpenSuccesses.set(0);
+        log.info("Redis circuit breaker moved from {} to {}.", from.getState(), to);
+        for (BiConsumer<State, State> listener : listeners) {
+            try {
+                listener.accept(from.getState(), to);
+            } catch (RuntimeException e) {
+                log.warn("Redis circuit breaker listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Value
+    private static class Snapshot {
+        State state;
+        long sinceNanos;
+    }
+}
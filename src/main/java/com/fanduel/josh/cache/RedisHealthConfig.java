@@ -0,0 +1,29 @@
+package com.fanduel.josh.cache;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Thresholds for {@link RedisCircuitBreaker}. Commands slower than {@code slowCallThresholdMillis}
+ * count as failures and are abandoned after {@code commandTimeoutMillis}, so with the defaults the
+ * breaker opens within a few hundred milliseconds of Redis becoming unreachable. Multi-key
+ * commands only fail the breaker on connection errors and have {@code bulkCommandTimeoutMillis}.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(value = "cache.health")
+@Data
+@NoArgsConstructor
+public class RedisHealthConfig {
+
+    private int failureThreshold = 3;
+    private long slowCallThresholdMillis = 150;
+    private long commandTimeoutMillis = 300;
+    private long bulkCommandTimeoutMillis = 5000;
+    private long openDurationMillis = 1000;
+    private int halfOpenSuccessThreshold = 2;
+    private long pingIntervalMillis = 250;
+}
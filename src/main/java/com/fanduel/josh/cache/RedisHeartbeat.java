@@ -2,62 +2,74 @@ package com.fanduel.josh.cache;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.Cache;
-import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.data.redis.RedisConnectionFailureException;
-import org.springframework.data.redis.connection.RedisConnection;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Pings Redis through the reactive connection so {@link RedisCircuitBreaker} notices an outage,
+ * and recovery, even when there is no traffic. Under load the breaker is driven by the cache
+ * commands themselves and usually opens before a ping fails. When entries are
+ * {@link RedisShards sharded} every shard is pinged as well, each driving its own breaker.
+ * <p>
+ * Recovery of the in-memory caches is left to {@link CustomMultiCacheManager}, which replays their
+ * outage changes to Redis before wiping them.
+ */
 @Slf4j
 @Component
 @EnableScheduling
 @RequiredArgsConstructor
 public class RedisHeartbeat {
 
-    private boolean isAlive = false;
+    private final ReactiveRedisTemplate<String, byte[]> reactiveBinaryRedisTemplate;
+    private final RedisCircuitBreaker redisCircuitBreaker;
+    private final RedisShards redisShards;
 
-    private final RedisConnectionFactory connectionFactory;
-    private final SimpleCacheManager simpleCacheManager;
+    private final Map<RedisCircuitBreaker, AtomicBoolean> pingsInFlight = new ConcurrentHashMap<>();
 
     @PostConstruct
     protected void init() {
         pingRedis();
     }
 
-    @Scheduled(fixedRate = 5000)
+    @Scheduled(fixedRateString = "${cache.health.pingIntervalMillis:250}")
     public void pingRedis() {
-        RedisConnection redisConnection = null;
-        try {
-            redisConnection = connectionFactory.getConnection();
-            if (!isAlive & (isAlive = "PONG".equals(redisConnection.ping()))) {
-                log.info("Redis connection obtained. Wiping in-memory cache.");
-                simpleCacheManager.getCacheNames().parallelStream()
-                        .forEach(
-                                name ->
-                                        Optional.ofNullable(simpleCacheManager.getCache(name))
-                                                .ifPresent(Cache::clear));
+        ping(reactiveBinaryRedisTemplate, redisCircuitBreaker);
+        if (redisShards.isSharded()) {
+            for (RedisShard shard : redisShards.getShards()) {
+                ping(shard.getTemplate(), shard.getCircuitBreaker());
             }
-        } catch (RedisConnectionFailureException e) {
-            if (isAlive) {
-                log.error(
-                        "Redis connection failed. Falling back to in-memory cache: {}",
-                        e.getMessage());
-                e.printStackTrace();
-            }
-            isAlive = false;
         }
-        if (redisConnection != null) {
-            redisConnection.close();
+    }
+
+    private void ping(ReactiveRedisTemplate<String, byte[]> template, RedisCircuitBreaker circuitBreaker) {
+        final AtomicBoolean pingInFlight = pingsInFlight.computeIfAbsent(circuitBreaker, breaker -> new AtomicBoolean());
+        if (!circuitBreaker.isProbeAllowed() || !pingInFlight.compareAndSet(false, true)) {
+            return;
         }
+        circuitBreaker.monitor(template.execute(connection -> connection.ping())
+                        .next()
+                        .<String>handle((pong, sink) -> {
+                            if ("PONG".equals(pong)) {
+                                sink.next(pong);
+                            } else {
+                                sink.error(new RedisConnectionFailureException("Unexpected ping reply " + pong));
+                            }
+                        }))
+                .doFinally(signal -> pingInFlight.set(false))
+                .subscribe(
+                        pong -> { },
+                        e -> log.debug("Redis ping failed: {}", e.getMessage()));
     }
 
     public boolean isAlive() {
-        return isAlive;
+        return redisCircuitBreaker.isClosed();
     }
 }
@@ -0,0 +1,58 @@
+package com.fanduel.josh.cache;
+
+import lombok.Getter;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.lang.Nullable;
+
+/**
+ * One Redis node of {@link RedisShards} with its own connection and {@link RedisCircuitBreaker},
+ * so an outage of the node only opens its own breaker. Reads of types that allow it go through
+ * {@code readTemplate}, which prefers the node's replicas when there are any.
+ */
+@Getter
+public class RedisShard {
+
+    private final String name;
+    private final ReactiveRedisTemplate<String, byte[]> template;
+    private final ReactiveRedisTemplate<String, byte[]> readTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    @Nullable
+    private final LettuceConnectionFactory connectionFactory;
+    @Nullable
+    private final LettuceConnectionFactory readConnectionFactory;
+
+    /**
+     * @param connectionFactory owned by the shard and destroyed with it, {@code null} when the
+     *                          connection is a shared bean
+     */
+    public RedisShard(String name,
+                      ReactiveRedisTemplate<String, byte[]> template,
+                      RedisCircuitBreaker circuitBreaker,
+                      @Nullable LettuceConnectionFactory connectionFactory) {
+        this(name, template, template, circuitBreaker, connectionFactory, null);
+    }
+
+    public RedisShard(String name,
+                      ReactiveRedisTemplate<String, byte[]> template,
+                      ReactiveRedisTemplate<String, byte[]> readTemplate,
+                      RedisCircuitBreaker circuitBreaker,
+                      @Nullable LettuceConnectionFactory connectionFactory,
+                      @Nullable LettuceConnectionFactory readConnectionFactory) {
+        this.name = name;
+        this.template = template;
+        this.readTemplate = readTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.connectionFactory = connectionFactory;
+        this.readConnectionFactory = readConnectionFactory;
+    }
+
+    public boolean isAvailable() {
+        return circuitBreaker.isClosed();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
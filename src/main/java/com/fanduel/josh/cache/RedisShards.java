@@ -0,0 +1,129 @@
+package com.fanduel.josh.cache;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Spreads cache keys over independent Redis nodes with consistent hashing. Every node is placed on
+ * a ring of 64-bit murmur3 hashes at {@code virtualNodes} points and a key belongs to the first
+ * point at or after its own hash, so adding or removing a node only moves the keys of the ring
+ * segments it gains or loses, roughly {@code 1 / nodes} of them.
+ * <p>
+ * Without {@code cache.sharding.nodes} there is a single shard, the {@code spring.redis} connection
+ * with the application wide {@link RedisCircuitBreaker}, and every key maps to it.
+ */
+@Slf4j
+public class RedisShards implements DisposableBean {
+
+    private static final HashFunction RING_HASH = Hashing.murmur3_128();
+
+    private final List<RedisShard> shards;
+    private final boolean sharded;
+    private final long[] points;
+    private final RedisShard[] owners;
+
+    private RedisShards(List<RedisShard> shards, boolean sharded, int virtualNodes) {
+        this.shards = List.copyOf(shards);
+        this.sharded = sharded;
+        final TreeMap<Long, RedisShard> ring = new TreeMap<>();
+        for (RedisShard shard : shards) {
+            for (int point = 0; point < Math.max(1, virtualNodes); point++) {
+                ring.putIfAbsent(RING_HASH.hashString(shard.getName() + "#" + point, StandardCharsets.UTF_8).asLong(), shard);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new RedisShard[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, RedisShard> point : ring.entrySet()) {
+            points[index] = point.getKey();
+            owners[index++] = point.getValue();
+        }
+    }
+
+    public static RedisShards single(RedisShard shard) {
+        return new RedisShards(List.of(shard), false, 1);
+    }
+
+    public static RedisShards consistent(List<RedisShard> shards, int virtualNodes) {
+        for (RedisShard shard : shards) {
+            shard.getCircuitBreaker().addListener((from, to) ->
+                    log.info("Redis shard {} moved from {} to {}.", shard.getName(), from, to));
+        }
+        return new RedisShards(shards, true, virtualNodes);
+    }
+
+    /**
+     * Whether keys are spread over {@code cache.sharding.nodes} rather than kept on the
+     * {@code spring.redis} connection.
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    public List<RedisShard> getShards() {
+        return shards;
+    }
+
+    public RedisShard forKey(String key) {
+        if (!sharded) {
+            return shards.get(0);
+        }
+        return ownerOf(RING_HASH.hashString(key, StandardCharsets.UTF_8).asLong());
+    }
+
+    public RedisShard forKey(ByteBuffer key) {
+        if (!sharded) {
+            return shards.get(0);
+        }
+        return ownerOf(RING_HASH.hashBytes(key.duplicate()).asLong());
+    }
+
+    public boolean isAvailable(String key) {
+        return forKey(key).isAvailable();
+    }
+
+    /**
+     * The given map split into one map per shard, or the map itself without sharding.
+     */
+    public <V> Map<RedisShard, Map<String, V>> partition(Map<String, V> keyValueMap) {
+        if (!sharded) {
+            return Map.of(shards.get(0), keyValueMap);
+        }
+        final Map<RedisShard, Map<String, V>> byShard = new LinkedHashMap<>();
+        keyValueMap.forEach((key, value) -> byShard
+                .computeIfAbsent(forKey(key), shard -> new LinkedHashMap<>())
+                .put(key, value));
+        return byShard;
+    }
+
+    private RedisShard ownerOf(long hash) {
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    @Override
+    public void destroy() {
+        for (RedisShard shard : shards) {
+            for (LettuceConnectionFactory connectionFactory
+                    : Arrays.asList(shard.getConnectionFactory(), shard.getReadConnectionFactory())) {
+                if (connectionFactory != null) {
+                    connectionFactory.destroy();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.fanduel.josh.cache;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads from replicas of the {@code spring.redis} primary. Disabled while {@code nodes} is empty.
+ * {@code readFrom} is a Lettuce {@link io.lettuce.core.ReadFrom} name such as
+ * {@code replicaPreferred}, {@code replica}, {@code nearest} or {@code any}. Types that cannot
+ * tolerate replication lag turn it off with {@code replicaReadsEnabled: false}.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(value = "cache.replica-reads")
+@Data
+@NoArgsConstructor
+public class ReplicaReadConfig {
+
+    /**
+     * {@code host:port} of each replica.
+     */
+    private List<String> nodes = new ArrayList<>();
+    private String readFrom = "replicaPreferred";
+}
@@ -0,0 +1,30 @@
+package com.fanduel.josh.cache;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Client-side sharding of cache entries over independent Redis nodes, see {@link RedisShards}.
+ * Disabled while {@code nodes} is empty. Each node is placed {@code virtualNodes} times on the
+ * hash ring, more points spread keys more evenly at the cost of a larger ring.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(value = "cache.sharding")
+@Data
+@NoArgsConstructor
+public class ShardingConfig {
+
+    /**
+     * {@code host:port} of each node. Changing the list only moves the keys of the ring segments
+     * that changed owner, but the order and spelling of the remaining nodes must stay the same.
+     */
+    private List<String> nodes = new ArrayList<>();
+    private int virtualNodes = 160;
+}
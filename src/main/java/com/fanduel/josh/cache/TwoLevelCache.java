@@ -0,0 +1,245 @@
+package com.fanduel.josh.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A local cache (L1) in front of a Redis cache (L2) under the same name. Reads that miss L1 are
+ * promoted from L2, writes and evictions go to L2 and then L1, and are published so every other
+ * node drops its L1 copy. L1 is keyed by the string form of the key, the same form Redis and the
+ * invalidation messages use.
+ * <p>
+ * L2 is skipped while the {@link RedisCircuitBreaker} is open and its failures are reported to
+ * the breaker, so during an outage the cache keeps working from L1 alone and each failure is only
+ * logged at debug. The keys written or evicted meanwhile are remembered and {@link #replayPending()
+ * replayed} to L2 on recovery, from whatever L1 then holds for them, so L2 does not keep serving
+ * values from before the outage. Past {@code maxPendingKeys} the whole of L2 is cleared instead.
+ */
+@Slf4j
+public class TwoLevelCache implements Cache {
+
+    public static final String ALL_KEYS = "*";
+
+    private final String name;
+    private final Cache local;
+    private final Cache remote;
+    private final RedisCircuitBreaker redisCircuitBreaker;
+    private final Consumer<String> invalidationPublisher;
+    private final long maxPendingKeys;
+
+    // Keys by their L1 form, written or evicted while L2 was skipped.
+    private final Map<String, Object> pendingKeys = new ConcurrentHashMap<>();
+    private final AtomicBoolean pendingClear = new AtomicBoolean();
+
+    public TwoLevelCache(String name, Cache local, Cache remote, RedisCircuitBreaker redisCircuitBreaker,
+                         Consumer<String> invalidationPublisher, long maxPendingKeys) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.redisCircuitBreaker = redisCircuitBreaker;
+        this.invalidationPublisher = invalidationPublisher;
+        this.maxPendingKeys = maxPendingKeys;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    @Nullable
+    public ValueWrapper get(Object key) {
+        final ValueWrapper cached = local.get(localKey(key));
+        if (cached != null) {
+            return cached;
+        }
+        final ValueWrapper promoted = fromRemote("get", () -> remote.get(key));
+        if (promoted != null) {
+            local.put(localKey(key), promoted.get());
+        }
+        return promoted;
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, @Nullable Class<T> type) {
+        final ValueWrapper cached = get(key);
+        final Object value = cached != null ? cached.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    /**
+     * Loads through L1 so concurrent callers of a key share one L2 lookup and at most one call of
+     * the loader, whose value is then written to L2.
+     */
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return local.get(localKey(key), () -> {
+            final ValueWrapper promoted = fromRemote("get", () -> remote.get(key));
+            if (promoted != null) {
+                return (T) promoted.get();
+            }
+            final T value = valueLoader.call();
+            if (!onRemote("put", () -> remote.put(key, value))) {
+                markPending(key);
+            }
+            return value;
+        });
+    }
+
+    @Override
+    public void put(Object key, @Nullable Object value) {
+        if (!onRemote("put", () -> remote.put(key, value))) {
+            markPending(key);
+        }
+        local.put(localKey(key), value);
+        invalidationPublisher.accept(localKey(key));
+    }
+
+    @Override
+    @Nullable
+    public ValueWrapper putIfAbsent(Object key, @Nullable Object value) {
+        if (!redisCircuitBreaker.isClosed()) {
+            final ValueWrapper existing = local.putIfAbsent(localKey(key), value);
+            if (existing == null) {
+                markPending(key);
+            }
+            return existing;
+        }
+        final ValueWrapper existing = fromRemote("putIfAbsent", () -> remote.putIfAbsent(key, value));
+        if (existing != null) {
+            local.put(localKey(key), existing.get());
+            return existing;
+        }
+        local.put(localKey(key), value);
+        invalidationPublisher.accept(localKey(key));
+        return null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        if (!onRemote("evict", () -> remote.evict(key))) {
+            markPending(key);
+        }
+        local.evict(localKey(key));
+        invalidationPublisher.accept(localKey(key));
+    }
+
+    @Override
+    public void clear() {
+        if (!onRemote("clear", remote::clear)) {
+            pendingClear.set(true);
+            pendingKeys.clear();
+        }
+        local.clear();
+        invalidationPublisher.accept(ALL_KEYS);
+    }
+
+    /**
+     * Applies an invalidation published by another node, {@link #ALL_KEYS} clearing the whole L1.
+     */
+    public void evictLocal(String key) {
+        if (ALL_KEYS.equals(key)) {
+            local.clear();
+        } else {
+            local.evict(key);
+        }
+    }
+
+    /**
+     * Writes what L1 holds for every key written or evicted while L2 was skipped, evicting the
+     * keys L1 no longer holds, after a clear of L2 if one was skipped. Keys that fail stay pending
+     * for the next recovery. Returns whether nothing is left pending.
+     */
+    public boolean replayPending() {
+        if (pendingClear.get()) {
+            if (!onRemote("clear", remote::clear)) {
+                return false;
+            }
+            pendingClear.set(false);
+        }
+        int replayed = 0;
+        for (Map.Entry<String, Object> pending : pendingKeys.entrySet()) {
+            final Object key = pending.getValue();
+            final ValueWrapper cached = local.get(pending.getKey());
+            final boolean written = cached != null
+                    ? onRemote("put", () -> remote.put(key, cached.get()))
+                    : onRemote("evict", () -> remote.evict(key));
+            if (!written) {
+                return false;
+            }
+            pendingKeys.remove(pending.getKey(), key);
+            invalidationPublisher.accept(pending.getKey());
+            replayed++;
+        }
+        if (replayed > 0) {
+            log.info("Replayed {} entries of cache {} written or evicted during the Redis outage.", replayed, name);
+        }
+        return pendingKeys.isEmpty() && !pendingClear.get();
+    }
+
+    // Bounded like L1, beyond that a clear of L2 is replayed instead of the single keys. Keys
+    // changed after a clear are still recorded, they are replayed after it.
+    private void markPending(Object key) {
+        if (pendingKeys.size() >= maxPendingKeys && !pendingKeys.containsKey(localKey(key))) {
+            log.warn("Too many entries of cache {} changed during the Redis outage, it will be cleared on recovery.", name);
+            pendingClear.set(true);
+            pendingKeys.clear();
+            return;
+        }
+        pendingKeys.put(localKey(key), key);
+    }
+
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    @Nullable
+    private <T> T fromRemote(String operation, Supplier<T> command) {
+        if (!redisCircuitBreaker.isClosed()) {
+            return null;
+        }
+        try {
+            return command.get();
+        } catch (RuntimeException e) {
+            redisCircuitBreaker.onFailure(e);
+            log.debug("Redis {} on cache {} failed, using the local cache only: {}", operation, name, e.getMessage());
+            return null;
+        }
+    }
+
+    // Whether L2 applied the command.
+    private boolean onRemote(String operation, Runnable command) {
+        if (!redisCircuitBreaker.isClosed()) {
+            return false;
+        }
+        try {
+            command.run();
+            return true;
+        } catch (RuntimeException e) {
+            redisCircuitBreaker.onFailure(e);
+            log.debug("Redis {} on cache {} failed, using the local cache only: {}", operation, name, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.fanduel.josh.cache;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for {@link WriteBehindQueue}. Pending writes are flushed once {@code flushSize} of them
+ * are queued or every {@code flushIntervalMillis}, whichever comes first.
+ */
+@Component
+@EnableConfigurationProperties
+@ConfigurationProperties(value = "cache.write-behind")
+@Data
+@NoArgsConstructor
+public class WriteBehindConfig {
+
+    private int capacity = 10_000;
+    private int flushSize = 500;
+    private long flushIntervalMillis = 50;
+    private int flushConcurrency = 4;
+    private long drainTimeoutMillis = 5000;
+}
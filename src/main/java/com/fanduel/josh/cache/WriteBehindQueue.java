@@ -0,0 +1,328 @@
+package com.fanduel.josh.cache;
+
+import com.fanduel.josh.repository.custom.CacheEntry;
+import com.fanduel.josh.repository.custom.CacheKeyResolver;
+import com.fanduel.josh.repository.custom.ClassKey;
+import com.fanduel.josh.repository.custom.ReactiveFailoverRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded write-behind buffer between {@link CacheLoader} and the cache. Writes to the same key
+ * coalesce into the newest one, and pending writes are flushed in batches of {@code flushSize}
+ * through {@code saveManyEntries}, so a miss storm turns into a few multi-key writes instead of
+ * one write per key. When the queue is full new keys are dropped and counted rather than blocking
+ * the caller, which only costs a later cache miss. Pending writes are drained on shutdown.
+ * <p>
+ * Writes of keys evicted after they were queued, or after their value started loading, are
+ * skipped, and deleted again when the eviction raced a write already in flight. This covers every
+ * delete made through {@link ReactiveFailoverRepository}, which records the evictions.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WriteBehindQueue {
+
+    private final ReactiveFailoverRepository reactiveFailoverRepository;
+    private final CacheKeyResolver cacheKeyResolver;
+    private final WriteBehindConfig writeBehindConfig;
+    private final EvictionTombstones evictionTombstones;
+
+    private final Map<ClassKey, Map<String, PendingWrite>> pending = new EnumMap<>(ClassKey.class);
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private Scheduler scheduler;
+    private Disposable periodicFlush;
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            pending.put(classKey, new ConcurrentHashMap<>());
+        }
+        scheduler = Schedulers.newSingle("cache-write-behind", true);
+        periodicFlush = scheduler.schedulePeriodically(this::requestFlush,
+                writeBehindConfig.getFlushIntervalMillis(), writeBehindConfig.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        periodicFlush.dispose();
+        // Holding the flushing flag keeps new flushes from starting, and waiting for it lets a
+        // flush already running finish before the final drain.
+        final long deadline = System.currentTimeMillis() + writeBehindConfig.getDrainTimeoutMillis();
+        while (!flushing.compareAndSet(false, true)) {
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("A write-behind flush was still running after {} ms, draining alongside it.",
+                        writeBehindConfig.getDrainTimeoutMillis());
+                break;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        try {
+            flushPending().block(Duration.ofMillis(Math.max(deadline - System.currentTimeMillis(), 1)));
+        } catch (RuntimeException e) {
+            log.warn("Draining the write-behind queue failed: {}", e.getMessage());
+        }
+        if (depth.get() > 0) {
+            log.warn("{} cache writes were still pending at shutdown and are lost.", depth.get());
+        }
+        scheduler.dispose();
+    }
+
+    public <T> void enqueue(CacheEntry<T> entry) {
+        enqueue(entry, evictionTombstones.mark());
+    }
+
+    public <T, ID> void enqueue(CacheEntry<T> entry, ID id) {
+        enqueue(entry, id, evictionTombstones.mark());
+    }
+
+    public <T, ID> void enqueueMany(Map<ID, CacheEntry<T>> idEntryMap) {
+        enqueueMany(idEntryMap, evictionTombstones.mark());
+    }
+
+    /**
+     * Variants taking the {@link EvictionTombstones#mark()} from before the value was loaded.
+     */
+    <T> void enqueue(CacheEntry<T> entry, long mark) {
+        final ClassKey classKey = getClassKey(entry.getType());
+        offer(classKey, classKey.generateKey(), null, entry, mark);
+    }
+
+    <T, ID> void enqueue(CacheEntry<T> entry, ID id, long mark) {
+        final ClassKey classKey = getClassKey(entry.getType());
+        offer(classKey, cacheKeyResolver.keyOf(classKey, id), id, entry, mark);
+    }
+
+    <T, ID> void enqueueMany(Map<ID, CacheEntry<T>> idEntryMap, long mark) {
+        idEntryMap.forEach((id, entry) -> {
+            if (id != null && entry != null) {
+                enqueue(entry, id, mark);
+            }
+        });
+    }
+
+    /**
+     * The pending write for a key, so a value that was just loaded is not loaded again by a reader
+     * that arrives before it has been flushed.
+     */
+    public <T> Optional<CacheEntry<T>> peek(ClassKey classKey, String key, Class<T> tClass) {
+        return Optional.ofNullable(pending.get(classKey).get(key))
+                .filter(write -> !evictionTombstones.isEvictedSince(classKey, key, write.getMark()))
+                .map(write -> cast(write.getEntry(), tClass));
+    }
+
+    /**
+     * Drops the pending write for a key, if any, so an evicted value is not written back after the
+     * eviction.
+     */
+    public void discard(ClassKey classKey, String key) {
+        if (pending.get(classKey).remove(key) != null) {
+            depth.decrementAndGet();
+        }
+    }
+
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    private void offer(ClassKey classKey, String key, Object id, CacheEntry<?> entry, long mark) {
+        if (evictionTombstones.isEvictedSince(classKey, key, mark)) {
+            return;
+        }
+        enqueued.increment();
+        pending.get(classKey).compute(key, (k, existing) -> {
+            if (existing != null) {
+                coalesced.increment();
+                return existing.getEntry().getWrittenAtMillis() > entry.getWrittenAtMillis()
+                        ? existing
+                        : new PendingWrite(id, entry, mark);
+            }
+            if (depth.incrementAndGet() > writeBehindConfig.getCapacity()) {
+                depth.decrementAndGet();
+                dropped.increment();
+                log.debug("Write-behind queue is full, dropping write of {}.", k);
+                return null;
+            }
+            return new PendingWrite(id, entry, mark);
+        });
+        if (depth.get() >= writeBehindConfig.getFlushSize()) {
+            requestFlush();
+        }
+    }
+
+    // Only one flush runs at a time, which is what bounds the number of writes in flight.
+    private void requestFlush() {
+        if (depth.get() == 0 || !flushing.compareAndSet(false, true)) {
+            return;
+        }
+        flushPending()
+                .subscribeOn(scheduler)
+                .doFinally(signal -> {
+                    flushing.set(false);
+                    if (depth.get() >= writeBehindConfig.getFlushSize()) {
+                        requestFlush();
+                    }
+                })
+                .subscribe(null, e -> log.warn("Write-behind flush failed: {}", e.getMessage()));
+    }
+
+    private Mono<Void> flushPending() {
+        return Flux.fromIterable(pending.entrySet())
+                .flatMapIterable(writes -> drainBatches(writes.getKey(), writes.getValue()))
+                .flatMap(this::write, writeBehindConfig.getFlushConcurrency())
+                .then();
+    }
+
+    private List<Batch> drainBatches(ClassKey classKey, Map<String, PendingWrite> writes) {
+        final List<Batch> batches = new ArrayList<>();
+        Map<String, PendingWrite> batch = new HashMap<>();
+        for (String key : writes.keySet()) {
+            final PendingWrite write = writes.remove(key);
+            if (write == null) {
+                continue;
+            }
+            depth.decrementAndGet();
+            if (!classKey.isMultipleItems()) {
+                batches.add(new Batch(classKey, Map.of(key, write)));
+                continue;
+            }
+            batch.put(key, write);
+            if (batch.size() == writeBehindConfig.getFlushSize()) {
+                batches.add(new Batch(classKey, batch));
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(new Batch(classKey, batch));
+        }
+        return batches;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Mono<Boolean> write(Batch batch) {
+        final ClassKey classKey = batch.getClassKey();
+        final Map<Object, CacheEntry<?>> entries = new HashMap<>();
+        batch.getWrites().forEach((key, write) -> {
+            if (!evictionTombstones.isEvictedSince(classKey, key, write.getMark())) {
+                entries.put(write.getId(), write.getEntry());
+            }
+        });
+        if (entries.isEmpty()) {
+            return Mono.just(true);
+        }
+        final int size = entries.size();
+        final Mono<Boolean> save = classKey.isMultipleItems()
+                ? reactiveFailoverRepository.saveManyEntries((Map) entries)
+                : reactiveFailoverRepository.saveEntry(entries.values().iterator().next()).map(saved -> true);
+        return save
+                .defaultIfEmpty(false)
+                .onErrorReturn(false)
+                .doOnNext(saved -> {
+                    if (saved) {
+                        written.add(size);
+                    } else {
+                        failed.add(size);
+                    }
+                })
+                .flatMap(saved -> deleteEvicted(batch).thenReturn(saved));
+    }
+
+    // An eviction made while the batch was being written may have reached Redis before the write.
+    private Mono<Long> deleteEvicted(Batch batch) {
+        final ClassKey classKey = batch.getClassKey();
+        final List<Object> ids = new ArrayList<>();
+        batch.getWrites().forEach((key, write) -> {
+            if (evictionTombstones.isEvictedSince(classKey, key, write.getMark())) {
+                ids.add(write.getId());
+            }
+        });
+        if (ids.isEmpty()) {
+            return Mono.just(0L);
+        }
+        final Mono<Long> delete = classKey.isMultipleItems()
+                ? reactiveFailoverRepository.deleteManyById(classKey.getType(), ids)
+                : reactiveFailoverRepository.delete(classKey.getType()).map(deleted -> deleted ? 1L : 0L);
+        return delete.onErrorResume(e -> {
+            log.warn("Deleting {} entries evicted during a write-behind flush failed: {}", classKey.getKey(), e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CacheEntry<T> cast(CacheEntry<?> entry, Class<T> tClass) {
+        tClass.cast(entry.getValue());
+        return (CacheEntry<T>) entry;
+    }
+
+    private ClassKey getClassKey(Class<?> type) {
+        return ClassKey.fromClass(type)
+                .orElseThrow(() ->
+                        new RuntimeException("Type " + type.getName() + " is not registered in ClassKey enum."));
+    }
+
+    @Value
+    private static class PendingWrite {
+        Object id;
+        CacheEntry<?> entry;
+        long mark;
+    }
+
+    @Value
+    private static class Batch {
+        ClassKey classKey;
+        Map<String, PendingWrite> writes;
+    }
+}
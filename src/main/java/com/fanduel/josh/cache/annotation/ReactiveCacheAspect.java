@@ -0,0 +1,197 @@
+package com.fanduel.josh.cache.annotation;
+
+import com.fanduel.josh.cache.CacheLoader;
+import com.fanduel.josh.repository.custom.ClassKey;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Weaves {@link ReactiveCacheable} and {@link ReactiveCacheEvict} methods through the
+ * {@link CacheLoader}. Annotated methods are checked on their first call and an
+ * {@link IllegalStateException} is thrown when one cannot be cached as declared.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class ReactiveCacheAspect {
+
+    private static final ParameterNameDiscoverer PARAMETER_NAMES = new DefaultParameterNameDiscoverer();
+
+    private final CacheLoader cacheLoader;
+
+    private final Map<Method, Operation> cacheableOperations = new ConcurrentHashMap<>();
+    private final Map<Method, Operation> evictOperations = new ConcurrentHashMap<>();
+
+    @Around("@annotation(reactiveCacheable)")
+    @SuppressWarnings("unchecked")
+    public Object cacheable(ProceedingJoinPoint joinPoint, ReactiveCacheable reactiveCacheable) {
+        final Operation operation = cacheableOperations.computeIfAbsent(methodOf(joinPoint),
+                method -> cacheableOperation(method, reactiveCacheable));
+        final Object[] args = joinPoint.getArgs();
+        if (operation.getIdIndex() < 0) {
+            return cacheLoader.loadOrFetchAsync(operation.getType(), () -> proceed(joinPoint, args));
+        }
+        final Object id = args[operation.getIdIndex()];
+        if (id == null) {
+            return proceed(joinPoint, args);
+        }
+        if (!operation.isMany()) {
+            return cacheLoader.loadOrFetchByIdAsync(operation.getType(), id, () -> proceed(joinPoint, args));
+        }
+        return cacheLoader.loadOrFetchManyById(operation.getType(), (Collection<Object>) id, missingIds -> {
+            final Object[] missingArgs = args.clone();
+            missingArgs[operation.getIdIndex()] = operation.idsArgument(missingIds);
+            return proceed(joinPoint, missingArgs);
+        });
+    }
+
+    @Around("@annotation(reactiveCacheEvict)")
+    @SuppressWarnings("unchecked")
+    public Object evict(ProceedingJoinPoint joinPoint, ReactiveCacheEvict reactiveCacheEvict) throws Throwable {
+        final Operation operation = evictOperations.computeIfAbsent(methodOf(joinPoint),
+                method -> evictOperation(method, reactiveCacheEvict));
+        final Object[] args = joinPoint.getArgs();
+        final Object result = joinPoint.proceed();
+        final Mono<Object> evict = Mono.defer(() -> evict(operation, args)).then(Mono.empty());
+        if (result instanceof Mono) {
+            return ((Mono<Object>) result)
+                    .flatMap(value -> evict.thenReturn(value))
+                    .switchIfEmpty(evict);
+        }
+        return ((Flux<Object>) result).concatWith(evict);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<?> evict(Operation operation, Object[] args) {
+        if (operation.getIdIndex() < 0) {
+            return cacheLoader.evict(operation.getType());
+        }
+        final Object id = args[operation.getIdIndex()];
+        if (id == null) {
+            return Mono.empty();
+        }
+        return operation.isMany()
+                ? cacheLoader.evictManyById(operation.getType(), (Collection<Object>) id)
+                : cacheLoader.evictById(operation.getType(), id);
+    }
+
+    private static Operation cacheableOperation(Method method, ReactiveCacheable annotation) {
+        final ResolvableType returnType = ResolvableType.forMethodReturnType(method);
+        if (!Mono.class.equals(returnType.resolve())) {
+            throw new IllegalStateException("@ReactiveCacheable method " + method + " must return a Mono.");
+        }
+        final int idIndex = idIndexOf(method, annotation.id());
+        final boolean many = isCollection(method, idIndex);
+        ResolvableType valueType = returnType.getGeneric(0);
+        if (many) {
+            if (!Map.class.equals(valueType.resolve())) {
+                throw new IllegalStateException("@ReactiveCacheable method " + method
+                        + " takes a collection of IDs and must return a Mono<Map<ID, T>>.");
+            }
+            valueType = valueType.getGeneric(1);
+        }
+        final Class<?> type = annotation.value() != void.class ? annotation.value() : valueType.resolve();
+        return operation(method, type, idIndex, many);
+    }
+
+    private static Operation evictOperation(Method method, ReactiveCacheEvict annotation) {
+        final Class<?> returnType = method.getReturnType();
+        if (!Mono.class.equals(returnType) && !Flux.class.equals(returnType)) {
+            throw new IllegalStateException("@ReactiveCacheEvict method " + method + " must return a Mono or a Flux.");
+        }
+        final int idIndex = idIndexOf(method, annotation.id());
+        return operation(method, annotation.value(), idIndex, isCollection(method, idIndex));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Operation operation(Method method, Class<?> type, int idIndex, boolean many) {
+        if (type == null) {
+            throw new IllegalStateException("The cached type of " + method + " cannot be resolved, set it on the annotation.");
+        }
+        final ClassKey classKey = ClassKey.fromClass(type)
+                .orElseThrow(() -> new IllegalStateException("Type " + type.getName() + " cached by " + method
+                        + " is not registered in ClassKey enum."));
+        if (classKey.isMultipleItems() != idIndex >= 0) {
+            throw new IllegalStateException(classKey.isMultipleItems()
+                    ? "Type " + type.getName() + " is cached by ID but " + method + " has no ID parameter."
+                    : "Type " + type.getName() + " is cached without an ID but " + method + " has an ID parameter.");
+        }
+        boolean listIds = false;
+        if (many) {
+            final Class<?> parameterType = method.getParameterTypes()[idIndex];
+            listIds = !parameterType.isAssignableFrom(LinkedHashSet.class);
+            if (listIds && !parameterType.isAssignableFrom(ArrayList.class)) {
+                throw new IllegalStateException("The IDs of " + method + " must be a Collection, Set or List.");
+            }
+        }
+        return new Operation((Class<Object>) type, idIndex, many, listIds);
+    }
+
+    private static int idIndexOf(Method method, String id) {
+        if (id.isEmpty()) {
+            if (method.getParameterCount() > 1) {
+                throw new IllegalStateException(method + " has several parameters, name the one holding the ID.");
+            }
+            return method.getParameterCount() - 1;
+        }
+        final String[] names = PARAMETER_NAMES.getParameterNames(method);
+        if (names != null) {
+            for (int index = 0; index < names.length; index++) {
+                if (id.equals(names[index])) {
+                    return index;
+                }
+            }
+        }
+        throw new IllegalStateException(method + " has no parameter named " + id + ".");
+    }
+
+    private static boolean isCollection(Method method, int idIndex) {
+        return idIndex >= 0 && Collection.class.isAssignableFrom(method.getParameterTypes()[idIndex]);
+    }
+
+    private static Method methodOf(ProceedingJoinPoint joinPoint) {
+        return ((MethodSignature) joinPoint.getSignature()).getMethod();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Mono<T> proceed(ProceedingJoinPoint joinPoint, Object[] args) {
+        try {
+            return (Mono<T>) joinPoint.proceed(args);
+        } catch (Throwable e) {
+            return Mono.error(e);
+        }
+    }
+
+    @Value
+    private static class Operation {
+        Class<Object> type;
+        /**
+         * Index of the ID parameter, negative for types cached without an ID.
+         */
+        int idIndex;
+        boolean many;
+        boolean listIds;
+
+        Object idsArgument(Set<Object> ids) {
+            return listIds ? new ArrayList<>(ids) : ids;
+        }
+    }
+}
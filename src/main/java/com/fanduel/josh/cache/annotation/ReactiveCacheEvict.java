@@ -0,0 +1,28 @@
+package com.fanduel.josh.cache.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Evicts cache entries once the {@code Mono} or {@code Flux} returned by the method completes
+ * without error. A method whose publisher fails or is never subscribed to evicts nothing.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReactiveCacheEvict {
+
+    /**
+     * The type whose entries are evicted.
+     */
+    Class<?> value();
+
+    /**
+     * Name of the parameter holding the ID or the collection of IDs to evict, following the same
+     * rules as {@link ReactiveCacheable#id()}.
+     */
+    String id() default "";
+}
@@ -0,0 +1,36 @@
+package com.fanduel.josh.cache.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the value emitted by a {@code Mono} returning method through
+ * {@link com.fanduel.josh.cache.CacheLoader}, so the value is cached rather than the {@code Mono}
+ * and reads never block. The method is only subscribed to on a miss:
+ * <ul>
+ *     <li>{@code Mono<T>} without an ID parameter caches the single entry of {@code T}.</li>
+ *     <li>{@code Mono<T>} with an ID parameter caches {@code T} by that ID.</li>
+ *     <li>{@code Mono<Map<ID, T>>} with a collection of IDs caches each value by its ID, and the
+ *     method is called again with only the IDs that missed, batched as {@code maxBatchSize}.</li>
+ * </ul>
+ * {@code T} must be registered in {@link com.fanduel.josh.repository.custom.ClassKey}.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReactiveCacheable {
+
+    /**
+     * The cached type, taken from the return type when not set.
+     */
+    Class<?> value() default void.class;
+
+    /**
+     * Name of the parameter holding the ID or the collection of IDs. When not set, a method with a
+     * single parameter uses it and a method without parameters has no ID.
+     */
+    String id() default "";
+}
@@ -0,0 +1,91 @@
+package com.fanduel.josh.cache.metrics;
+
+import com.fanduel.josh.cache.InFlightRequests;
+import com.fanduel.josh.cache.LoaderSchedulers;
+import com.fanduel.josh.cache.RedisCircuitBreaker;
+import com.fanduel.josh.cache.WriteBehindQueue;
+import com.fanduel.josh.repository.custom.ClassKey;
+import com.fanduel.josh.repository.custom.codec.CompressionStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the counters the cache components already keep as Micrometer meters.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheMeterBinder implements MeterBinder {
+
+    private final LoaderSchedulers loaderSchedulers;
+    private final CompressionStats compressionStats;
+    private final WriteBehindQueue writeBehindQueue;
+    private final RedisCircuitBreaker redisCircuitBreaker;
+    private final InFlightRequests inFlightRequests;
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        for (ClassKey classKey : ClassKey.values()) {
+            final String key = classKey.getKey();
+            FunctionCounter.builder("cache.loader.rejections", loaderSchedulers, s -> s.getRejectedCount(classKey))
+                    .tag("classKey", key)
+                    .register(registry);
+            final CompressionStats.Stats stats = compressionStats.get(classKey);
+            FunctionCounter.builder("cache.compression.count", stats, s -> s.getCompressions().sum())
+                    .tag("classKey", key)
+                    .register(registry);
+            FunctionCounter.builder("cache.compression.ineffective", stats, s -> s.getIneffective().sum())
+                    .tag("classKey", key)
+                    .register(registry);
+            FunctionTimer.builder("cache.compression.time", stats,
+                            s -> s.getCompressions().sum(), s -> s.getCompressNanos().sum(), TimeUnit.NANOSECONDS)
+                    .tag("classKey", key)
+                    .register(registry);
+            FunctionTimer.builder("cache.decompression.time", stats,
+                            s -> s.getDecompressions().sum(), s -> s.getDecompressNanos().sum(), TimeUnit.NANOSECONDS)
+                    .tag("classKey", key)
+                    .register(registry);
+            Gauge.builder("cache.compression.ratio", stats, CompressionStats.Stats::getCompressionRatio)
+                    .tag("classKey", key)
+                    .register(registry);
+        }
+        Gauge.builder("cache.write.behind.depth", writeBehindQueue, WriteBehindQueue::getQueueDepth)
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.writes", writeBehindQueue, WriteBehindQueue::getEnqueuedCount)
+                .tag("result", "enqueued")
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.writes", writeBehindQueue, WriteBehindQueue::getCoalescedCount)
+                .tag("result", "coalesced")
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.writes", writeBehindQueue, WriteBehindQueue::getDroppedCount)
+                .tag("result", "dropped")
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.writes", writeBehindQueue, WriteBehindQueue::getWrittenCount)
+                .tag("result", "written")
+                .register(registry);
+        FunctionCounter.builder("cache.write.behind.writes", writeBehindQueue, WriteBehindQueue::getFailedCount)
+                .tag("result", "failed")
+                .register(registry);
+        // 0 closed, 1 half-open, 2 open.
+        Gauge.builder("cache.redis.circuit.state", redisCircuitBreaker, breaker -> {
+                    switch (breaker.getState()) {
+                        case CLOSED:
+                            return 0;
+                        case HALF_OPEN:
+                            return 1;
+                        default:
+                            return 2;
+                    }
+                })
+                .register(registry);
+        Gauge.builder("cache.inflight.requests", inFlightRequests, InFlightRequests::size)
+                .register(registry);
+    }
+}
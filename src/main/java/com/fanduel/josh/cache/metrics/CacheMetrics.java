@@ -0,0 +1,163 @@
+package com.fanduel.josh.cache.metrics;
+
+import com.fanduel.josh.repository.custom.ClassKey;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for the cache, all tagged with the {@link ClassKey}. Meters are created up
+ * front so recording on the hot path is a plain increment.
+ * <ul>
+ *     <li>{@code cache.requests}: {@link com.fanduel.josh.cache.CacheLoader} lookups by result
+ *     (hit, stale, absent or miss), absent being a hit on an ID
+ *     known not to exist.</li>
+ *     <li>{@code cache.tier.gets}: lookups made against each tier (near, redis, memory or pending)
+ *     by result (hit or miss), which shows which tier actually served a request.</li>
+ *     <li>{@code cache.loads}: supplier latency by outcome (success or failure).</li>
+ *     <li>{@code cache.payload.size}: encoded value sizes read from and written to Redis.</li>
+ *     <li>{@code cache.deserialization.failures}: stored values that could not be decoded and were
+ *     deleted.</li>
+ *     <li>{@code cache.hash.fields}: field counts of the hash shards of {@code storageMode: hash}
+ *     types, as seen by each sweep.</li>
+ * </ul>
+ */
+@Component
+public class CacheMetrics {
+
+    public enum Tier {
+        NEAR, REDIS, MEMORY, PENDING;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<ClassKey, Meters> meters = new EnumMap<>(ClassKey.class);
+
+    public CacheMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (ClassKey classKey : ClassKey.values()) {
+            meters.put(classKey, new Meters(meterRegistry, classKey));
+        }
+    }
+
+    public void recordHits(ClassKey classKey, int count) {
+        meters.get(classKey).hits.increment(count);
+    }
+
+    public void recordStaleHits(ClassKey classKey, int count) {
+        meters.get(classKey).staleHits.increment(count);
+    }
+
+    public void recordAbsentHits(ClassKey classKey, int count) {
+        meters.get(classKey).absentHits.increment(count);
+    }
+
+    public void recordMisses(ClassKey classKey, int count) {
+        meters.get(classKey).misses.increment(count);
+    }
+
+    public void recordTierGets(ClassKey classKey, Tier tier, int hits, int misses) {
+        final Meters classMeters = meters.get(classKey);
+        if (hits > 0) {
+            classMeters.tierHits.get(tier).increment(hits);
+        }
+        if (misses > 0) {
+            classMeters.tierMisses.get(tier).increment(misses);
+        }
+    }
+
+    public void recordLoad(ClassKey classKey, boolean success, long millis) {
+        final Meters classMeters = meters.get(classKey);
+        (success ? classMeters.loadSuccesses : classMeters.loadFailures).record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordPayloadRead(ClassKey classKey, int bytes) {
+        meters.get(classKey).payloadReads.record(bytes);
+    }
+
+    public void recordPayloadWrite(ClassKey classKey, int bytes) {
+        meters.get(classKey).payloadWrites.record(bytes);
+    }
+
+    public void recordDeserializationFailure(ClassKey classKey) {
+        meters.get(classKey).deserializationFailures.increment();
+    }
+
+    public void recordSerializationFailure(ClassKey classKey) {
+        meters.get(classKey).serializationFailures.increment();
+    }
+
+    public void recordHashFields(ClassKey classKey, long fields) {
+        meters.get(classKey).hashFields.record(fields);
+    }
+
+    /**
+     * Binds the size, hit, miss and eviction statistics of a local Caffeine cache, which must be
+     * built with {@code recordStats()}.
+     */
+    public void monitorLocalCache(ClassKey classKey, Tier tier, Cache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "cache." + tier.tag(),
+                "classKey", classKey.getKey());
+    }
+
+    private static class Meters {
+        private final Counter hits;
+        private final Counter staleHits;
+        private final Counter absentHits;
+        private final Counter misses;
+        private final Map<Tier, Counter> tierHits = new EnumMap<>(Tier.class);
+        private final Map<Tier, Counter> tierMisses = new EnumMap<>(Tier.class);
+        private final Timer loadSuccesses;
+        private final Timer loadFailures;
+        private final DistributionSummary payloadReads;
+        private final DistributionSummary payloadWrites;
+        private final Counter deserializationFailures;
+        private final Counter serializationFailures;
+        private final DistributionSummary hashFields;
+
+        Meters(MeterRegistry registry, ClassKey classKey) {
+            final String key = classKey.getKey();
+            hits = registry.counter("cache.requests", "classKey", key, "result", "hit");
+            staleHits = registry.counter("cache.requests", "classKey", key, "result", "stale");
+            absentHits = registry.counter("cache.requests", "classKey", key, "result", "absent");
+            misses = registry.counter("cache.requests", "classKey", key, "result", "miss");
+            for (Tier tier : Tier.values()) {
+                tierHits.put(tier, registry.counter("cache.tier.gets",
+                        "classKey", key, "tier", tier.tag(), "result", "hit"));
+                tierMisses.put(tier, registry.counter("cache.tier.gets",
+                        "classKey", key, "tier", tier.tag(), "result", "miss"));
+            }
+            loadSuccesses = Timer.builder("cache.loads")
+                    .tags("classKey", key, "outcome", "success")
+                    .publishPercentileHistogram()
+                    .register(registry);
+            loadFailures = Timer.builder("cache.loads")
+                    .tags("classKey", key, "outcome", "failure")
+                    .register(registry);
+            payloadReads = DistributionSummary.builder("cache.payload.size")
+                    .baseUnit("bytes")
+                    .tags("classKey", key, "operation", "read")
+                    .register(registry);
+            payloadWrites = DistributionSummary.builder("cache.payload.size")
+                    .baseUnit("bytes")
+                    .tags("classKey", key, "operation", "write")
+                    .register(registry);
+            deserializationFailures = registry.counter("cache.deserialization.failures", "classKey", key);
+            serializationFailures = registry.counter("cache.serialization.failures", "classKey", key);
+            hashFields = DistributionSummary.builder("cache.hash.fields")
+                    .tags("classKey", key)
+                    .register(registry);
+        }
+    }
+}
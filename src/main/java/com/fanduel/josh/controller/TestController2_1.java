@@ -41,8 +41,8 @@ public class TestController2_1 {
     @GetMapping("many")
     public Mono<Map<String, TestObj>> getById(@RequestParam MultiValueMap<String, String> params) {
         List<String> ids = params.get("id");
-        return cacheLoader.loadOrFetchManyById(TestObj.class, ids,
-                () -> ids.stream().collect(Collectors.toMap(
+        return cacheLoader.loadOrFetchManyByIdBlocking(TestObj.class, ids,
+                missingIds -> missingIds.stream().collect(Collectors.toMap(
                         Function.identity(),
                         this::newTestObj
                 )));
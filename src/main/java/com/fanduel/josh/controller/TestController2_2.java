@@ -43,10 +43,10 @@ public class TestController2_2 {
         // Collection of IDs to grab
         List<String> ids = params.get("id");
         // Supply cache loader with Class of the return type, and the collection of IDs you want
-        return cacheLoader.loadOrFetchManyById(TestObj2.class, ids,
+        return cacheLoader.loadOrFetchManyByIdBlocking(TestObj2.class, ids,
                 // Our typical Set -> Map service method.
-                // This will only be called to grab the IDs that do not exist in the cache
-                () -> ids.parallelStream().collect(Collectors.toMap(
+                // This will only be called with the IDs that do not exist in the cache
+                missingIds -> missingIds.parallelStream().collect(Collectors.toMap(
                         Function.identity(),
                         this::newTestObj2
                 )));
@@ -2,7 +2,7 @@ package com.fanduel.josh.controller;
 
 import com.fanduel.josh.cache.CacheConfig;
 import com.fanduel.josh.cache.CacheLoader;
-import com.fanduel.josh.repository.custom.ReactiveRedisRepository;
+import com.fanduel.josh.repository.custom.ReactiveFailoverRepository;
 import com.fanduel.josh.model.ComplexId3;
 import com.fanduel.josh.model.TestObj3;
 import lombok.RequiredArgsConstructor;
@@ -29,7 +29,7 @@ import java.util.stream.Collectors;
 public class TestController2_3 {
 
     private final CacheLoader cacheLoader;
-    private final ReactiveRedisRepository reactiveRedisRepository;
+    private final ReactiveFailoverRepository reactiveFailoverRepository;
 
     @GetMapping
     public Mono<TestObj3> get() {
@@ -46,8 +46,8 @@ public class TestController2_3 {
     @GetMapping("many")
     public Mono<Map<ComplexId3, TestObj3>> getManyById(@RequestParam MultiValueMap<String, String> params) {
         List<ComplexId3> ids = params.get("id").stream().map(ComplexId3::new).collect(Collectors.toList());
-        return cacheLoader.loadOrFetchManyById(TestObj3.class, ids,
-                () -> ids.parallelStream()
+        return cacheLoader.loadOrFetchManyByIdBlocking(TestObj3.class, ids,
+                missingIds -> missingIds.parallelStream()
                         .collect(Collectors.toMap(
                                 Function.identity(),
                                 this::newTestObj3
@@ -56,12 +56,12 @@ public class TestController2_3 {
 
     @DeleteMapping()
     public Mono<Long> delete() {
-        return reactiveRedisRepository.deleteAllOfType(TestObj3.class);
+        return reactiveFailoverRepository.deleteAllOfType(TestObj3.class);
     }
 
     @DeleteMapping("{id}")
     public Mono<Long> deleteById(@PathVariable("id") String id) {
-        return reactiveRedisRepository.deleteAllByKeyName(id);
+        return reactiveFailoverRepository.deleteAllByKeyName(id);
     }
 
     public TestObj3 newTestObj3(ComplexId3 id) {
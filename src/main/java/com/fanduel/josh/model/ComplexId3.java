@@ -1,12 +1,17 @@
 package com.fanduel.josh.model;
 
+import com.fanduel.josh.repository.custom.CacheId;
+import com.fanduel.josh.repository.custom.CacheKeyPart;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
 @Data
 @EqualsAndHashCode
+@CacheId
 public class ComplexId3 {
+    @CacheKeyPart(0)
     private String testString1;
+    @CacheKeyPart(1)
     private String testString2;
 
     public ComplexId3(String id) {
@@ -0,0 +1,46 @@
+package com.fanduel.josh.repository.custom;
+
+import lombok.Value;
+
+/**
+ * A cached value together with the time it was written and how long it took to load, so readers
+ * can tell how old it is and how expensive it is to recompute. {@link #UNKNOWN} is used for values
+ * stored before this metadata was recorded.
+ * <p>
+ * An {@link #absent(Class, long, long) absent} entry has no value and records that the source of
+ * truth had nothing for the key, so lookups can skip it until the entry expires.
+ */
+@Value
+public class CacheEntry<T> {
+
+    public static final long UNKNOWN = 0L;
+
+    T value;
+    long writtenAtMillis;
+    long loadMillis;
+    Class<?> type;
+
+    public static <T> CacheEntry<T> of(T value) {
+        return new CacheEntry<>(value, System.currentTimeMillis(), UNKNOWN, value.getClass());
+    }
+
+    public static <T> CacheEntry<T> of(T value, long writtenAtMillis) {
+        return new CacheEntry<>(value, writtenAtMillis, UNKNOWN, value.getClass());
+    }
+
+    public static <T> CacheEntry<T> of(T value, long writtenAtMillis, long loadMillis) {
+        return new CacheEntry<>(value, writtenAtMillis, loadMillis, value.getClass());
+    }
+
+    public static <T> CacheEntry<T> absent(Class<T> type, long writtenAtMillis, long loadMillis) {
+        return new CacheEntry<>(null, writtenAtMillis, loadMillis, type);
+    }
+
+    public boolean isAbsent() {
+        return value == null;
+    }
+
+    public boolean isOlderThan(long ageMillis, long nowMillis) {
+        return writtenAtMillis == UNKNOWN || nowMillis - writtenAtMillis > ageMillis;
+    }
+}
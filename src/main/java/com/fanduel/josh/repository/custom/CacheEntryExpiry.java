@@ -0,0 +1,39 @@
+package com.fanduel.josh.repository.custom;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expires local entries after the TTL of their type, or after the shorter negative TTL when they
+ * are {@link CacheEntry#isAbsent() absent}. A TTL of zero or less never expires.
+ */
+class CacheEntryExpiry implements Expiry<String, CacheEntry<?>> {
+
+    private final long ttlInNanos;
+    private final long negativeTtlInNanos;
+
+    CacheEntryExpiry(long ttlInSeconds, long negativeTtlInSeconds) {
+        this.ttlInNanos = toNanos(ttlInSeconds);
+        this.negativeTtlInNanos = toNanos(negativeTtlInSeconds);
+    }
+
+    @Override
+    public long expireAfterCreate(String key, CacheEntry<?> entry, long currentTime) {
+        return entry.isAbsent() ? negativeTtlInNanos : ttlInNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, CacheEntry<?> entry, long currentTime, long currentDuration) {
+        return expireAfterCreate(key, entry, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String key, CacheEntry<?> entry, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    private static long toNanos(long seconds) {
+        return seconds > 0 ? TimeUnit.SECONDS.toNanos(seconds) : Long.MAX_VALUE;
+    }
+}
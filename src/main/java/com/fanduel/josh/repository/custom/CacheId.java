@@ -0,0 +1,18 @@
+package com.fanduel.josh.repository.custom;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a type usable as a cache ID. Its key is made of its {@link CacheKeyPart} fields and
+ * no-argument methods in ascending {@link CacheKeyPart#value() order}, joined by
+ * {@link com.fanduel.josh.cache.CacheConfig#KEY_DELIMITER}.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheId {
+}
@@ -0,0 +1,23 @@
+package com.fanduel.josh.repository.custom;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A component of a {@link CacheId} key. Parts of a type registered with {@link ObjectKeyExtractor},
+ * including other {@link CacheId} types, are keyed with its extractor, anything else with
+ * {@link String#valueOf(Object)}.
+ */
+@Documented
+@Target({ElementType.FIELD, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheKeyPart {
+
+    /**
+     * Position of this part within the key, unique within the type.
+     */
+    int value();
+}
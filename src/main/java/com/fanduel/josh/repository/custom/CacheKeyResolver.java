@@ -0,0 +1,74 @@
+package com.fanduel.josh.repository.custom;
+
+import com.fanduel.josh.cache.CacheConfig;
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Builds the Redis keys of IDed entries, {@code <key>:<id>}. For types with
+ * {@link ClassKey#isHashTagEnabled hash tags} the type name is wrapped in a Redis Cluster hash
+ * tag, {@code {testObj2}:<id>}. Prefixes are resolved once from the config.
+ */
+@Component
+public class CacheKeyResolver {
+
+    private final ObjectKeyExtractor idKeyExtractor;
+    private final Map<ClassKey, String> keyPrefixes = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, byte[]> keyPrefixBytes = new EnumMap<>(ClassKey.class);
+
+    public CacheKeyResolver(ObjectKeyExtractor idKeyExtractor, CacheDetailsConfig cacheDetailsConfig) {
+        this.idKeyExtractor = idKeyExtractor;
+        for (ClassKey classKey : ClassKey.values()) {
+            final String name = classKey.isHashTagEnabled(cacheDetailsConfig)
+                    ? "{" + classKey.getKey() + "}"
+                    : classKey.getKey();
+            final String prefix = name + CacheConfig.KEY_DELIMITER;
+            keyPrefixes.put(classKey, prefix);
+            keyPrefixBytes.put(classKey, prefix.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public <ID> String keyOf(ClassKey classKey, ID id) {
+        return generateKey(classKey, idKeyExtractor.extractKey(id));
+    }
+
+    public String generateKey(ClassKey classKey, String idKey) {
+        return keyPrefixes.get(classKey).concat(idKey);
+    }
+
+    public String generateKey(ClassKey classKey, @Nullable String... idKeys) {
+        if (idKeys == null || idKeys.length == 0) {
+            return classKey.generateKey();
+        }
+        if (idKeys.length == 1) {
+            return generateKey(classKey, idKeys[0]);
+        }
+        final StringBuilder builder = new StringBuilder(keyPrefixes.get(classKey));
+        for (int i = 0; i < idKeys.length; i++) {
+            if (i > 0) {
+                builder.append(CacheConfig.KEY_DELIMITER);
+            }
+            builder.append(idKeys[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The {@code <key>:} every IDed key of the type starts with, including the hash tag if any.
+     */
+    public String getKeyPrefix(ClassKey classKey) {
+        return keyPrefixes.get(classKey);
+    }
+
+    /**
+     * The key prefix as UTF-8, shared, must not be modified.
+     */
+    byte[] getKeyPrefixBytes(ClassKey classKey) {
+        return keyPrefixBytes.get(classKey);
+    }
+}
@@ -1,15 +1,16 @@
 package com.fanduel.josh.repository.custom;
 
-import com.fanduel.josh.cache.CacheConfig;
 import com.fanduel.josh.cache.CacheDetailsConfig;
 import com.fanduel.josh.model.TestObj;
 import com.fanduel.josh.model.TestObj2;
 import com.fanduel.josh.model.TestObj3;
 import lombok.Getter;
-import org.springframework.lang.Nullable;
 
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
 
 public enum ClassKey {
 
@@ -22,10 +23,28 @@ public enum ClassKey {
     private final Class<?> type;
     @Getter
     private final boolean multipleItems;
+    private final Optional<ClassKey> self;
+
+    private static final Map<String, Optional<ClassKey>> BY_KEY = Arrays.stream(values())
+            .collect(Collectors.toUnmodifiableMap(ClassKey::getKey, classKey -> classKey.self));
+
+    // Resolved once per class and cached by the JVM, every repository call looks its type up here.
+    private static final ClassValue<Optional<ClassKey>> BY_TYPE = new ClassValue<>() {
+        @Override
+        protected Optional<ClassKey> computeValue(Class<?> type) {
+            for (ClassKey classKey : values()) {
+                if (classKey.type.equals(type)) {
+                    return classKey.self;
+                }
+            }
+            return Optional.empty();
+        }
+    };
 
     ClassKey(Class<?> clazz, boolean multipleItems) {
         type = clazz;
         this.multipleItems = multipleItems;
+        self = Optional.of(this);
     }
 
     public String getKey() {
@@ -38,16 +57,162 @@ public enum ClassKey {
                 .orElse(-1L);
     }
 
-    public String generateKey(@Nullable String... keys) {
-        if (keys == null || keys.length == 0) {
-            return getKey();
+    /**
+     * How long IDs the source of truth had nothing for are remembered as absent, zero or less
+     * disables negative caching. Only applies to types with multiple items.
+     */
+    public long getNegativeTtlInSeconds(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getNegativeTtlInSeconds, -1L);
+    }
+
+    public boolean isNegativeCachingEnabled(CacheDetailsConfig cacheDetailsConfig) {
+        return multipleItems && getNegativeTtlInSeconds(cacheDetailsConfig) > 0;
+    }
+
+    /**
+     * Key of the single entry of a type without IDs, IDed keys are built by {@link CacheKeyResolver}.
+     */
+    public String generateKey() {
+        return getKey();
+    }
+
+    /**
+     * Entries older than this are still served but trigger a background refresh, zero or less
+     * disables refresh-ahead.
+     */
+    public long getSoftTtlInSeconds(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getSoftTtlInSeconds, -1L);
+    }
+
+    public int getMaxConcurrentRefreshes(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getMaxConcurrentRefreshes, 4);
+    }
+
+    public boolean isNearCacheEnabled(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getNearCacheEnabled, false);
+    }
+
+    /**
+     * Keeps the in-memory fallback tier populated while Redis is up and replays writes made to it
+     * during an outage once Redis is back.
+     */
+    public boolean isWarmFailoverEnabled(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getWarmFailoverEnabled, false);
+    }
+
+    public long getMaxLocalEntries(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getMaxLocalEntries, 10_000L);
+    }
+
+    public int getMaxBatchSize(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getMaxBatchSize, 100);
+    }
+
+    public int getBatchConcurrency(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getBatchConcurrency, 4);
+    }
+
+    public int getLoaderThreads(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getLoaderThreads, 16);
+    }
+
+    public int getLoaderQueueSize(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getLoaderQueueSize, 1000);
+    }
+
+    public int getWriteChunkSize(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getWriteChunkSize, 500);
+    }
+
+    public String getCodec(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getCodec, "json");
+    }
+
+    /**
+     * Encoded values of at least this many bytes are compressed, zero or less disables compression.
+     */
+    public int getCompressionThresholdBytes(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getCompressionThresholdBytes, 0);
+    }
+
+    public int getCompressionLevel(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getCompressionLevel, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Redis TTLs are shortened by a random amount of up to this percentage so entries written
+     * together do not all expire together.
+     */
+    public int getTtlJitterPercent(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getTtlJitterPercent, 0);
+    }
+
+    /**
+     * Scales how early entries are probabilistically refreshed before they expire, relative to how
+     * long they took to load. 1.0 is the usual choice, zero or less disables early expiration.
+     */
+    public double getEarlyExpirationBeta(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getEarlyExpirationBeta, 0.0);
+    }
+
+    /**
+     * Hash storage only applies to types with multiple items, single instance types are always
+     * stored as strings.
+     */
+    public StorageMode getStorageMode(CacheDetailsConfig cacheDetailsConfig) {
+        if (!multipleItems) {
+            return StorageMode.STRING;
+        }
+        return StorageMode.fromName(
+                cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getStorageMode, "string"));
+    }
+
+    /**
+     * Puts every IDed key of the type in the same Redis Cluster slot, so batch reads and writes
+     * are a single command on a single node instead of one per slot. That node then holds the
+     * whole type, which suits small hot types better than large ones. Only applies to types with
+     * multiple items.
+     */
+    public boolean isHashTagEnabled(CacheDetailsConfig cacheDetailsConfig) {
+        return multipleItems
+                && cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getHashTagEnabled, false);
+    }
+
+    /**
+     * Whether reads may be served by a replica when {@code cache.replica-reads} is configured.
+     * Types that cannot tolerate replication lag, for instance because they are read right after
+     * being written, turn this off to always read from the primary. Near-cached types always read
+     * from the primary, as a lagging replica would refill their local tier with a value that was
+     * just invalidated and keep it there for the whole TTL.
+     */
+    public boolean isReplicaReadsEnabled(CacheDetailsConfig cacheDetailsConfig) {
+        return !isNearCacheEnabled(cacheDetailsConfig)
+                && cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getReplicaReadsEnabled, true);
+    }
+
+    /**
+     * Number of hashes the entries of a {@code storageMode: hash} type are spread over. Unless
+     * {@code hashShards} is set, there are enough for {@code expectedEntries} to stay within
+     * {@code maxFieldsPerHash} per hash.
+     */
+    public int getHashShards(CacheDetailsConfig cacheDetailsConfig, int maxFieldsPerHash) {
+        final Integer hashShards = cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getHashShards, null);
+        if (hashShards != null) {
+            return Math.max(1, hashShards);
         }
-        return getKey() + CacheConfig.KEY_DELIMITER + String.join(CacheConfig.KEY_DELIMITER, keys);
+        final long expectedEntries = getExpectedEntries(cacheDetailsConfig);
+        return (int) Math.max(1, (expectedEntries + maxFieldsPerHash - 1) / Math.max(1, maxFieldsPerHash));
+    }
+
+    public long getExpectedEntries(CacheDetailsConfig cacheDetailsConfig) {
+        return cacheDetailsConfig.resolve(getKey(), CacheDetailsConfig.CacheDetails::getExpectedEntries, 10_000L);
+    }
+
+    public static Optional<ClassKey> fromKey(String key) {
+        return key == null ? Optional.empty() : BY_KEY.getOrDefault(key, Optional.empty());
     }
 
     public static Optional<ClassKey> fromClass(Class<?> type) {
-        return Arrays.stream(values())
-                .filter(cacheKey -> cacheKey.type.equals(type))
-                .findFirst();
+        return BY_TYPE.get(type);
     }
 }
@@ -0,0 +1,106 @@
+package com.fanduel.josh.repository.custom;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes the Redis keys of a batch of IDs straight to bytes. The type prefix is copied from
+ * {@link ClassKey} and each ID is appended to a per-thread builder and written into a per-thread
+ * scratch buffer, so a batch costs one array holding every key plus a view per key instead of a
+ * key string and a byte array per ID.
+ * <p>
+ * The scratch buffer is only reused while encoding, the returned keys share one exact-size copy
+ * of it since the Redis client holds on to them until the command completes.
+ */
+@Component
+@RequiredArgsConstructor
+public class KeyEncoder {
+
+    private static final int INITIAL_SCRATCH_BYTES = 4 * 1024;
+    private static final int MAX_RETAINED_SCRATCH_BYTES = 256 * 1024;
+    private static final int MAX_RETAINED_ID_CHARS = 1024;
+    private static final ThreadLocal<byte[]> SCRATCH =
+            ThreadLocal.withInitial(() -> new byte[INITIAL_SCRATCH_BYTES]);
+    private static final ThreadLocal<StringBuilder> ID_BUILDER =
+            ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+    private final ObjectKeyExtractor idKeyExtractor;
+    private final CacheKeyResolver cacheKeyResolver;
+
+    public <ID> List<ByteBuffer> encodeKeys(ClassKey classKey, List<ID> ids) {
+        final byte[] prefix = cacheKeyResolver.getKeyPrefixBytes(classKey);
+        final int[] ends = new int[ids.size()];
+        byte[] scratch = SCRATCH.get();
+        final StringBuilder key = ID_BUILDER.get();
+        int length = 0;
+        for (int index = 0; index < ids.size(); index++) {
+            key.setLength(0);
+            idKeyExtractor.appendKey(ids.get(index), key);
+            // UTF-8 needs at most three bytes per char, surrogate pairs take four for two chars.
+            final int required = length + prefix.length + key.length() * 3;
+            if (required > scratch.length) {
+                scratch = Arrays.copyOf(scratch, Math.max(required, scratch.length * 2));
+            }
+            System.arraycopy(prefix, 0, scratch, length, prefix.length);
+            length = writeUtf8(key, scratch, length + prefix.length);
+            ends[index] = length;
+        }
+        if (scratch.length <= MAX_RETAINED_SCRATCH_BYTES) {
+            SCRATCH.set(scratch);
+        }
+        if (key.capacity() > MAX_RETAINED_ID_CHARS) {
+            ID_BUILDER.remove();
+        }
+
+        final byte[] encoded = Arrays.copyOf(scratch, length);
+        final List<ByteBuffer> keys = new ArrayList<>(ends.length);
+        int start = 0;
+        for (int end : ends) {
+            keys.add(ByteBuffer.wrap(encoded, start, end - start).slice());
+            start = end;
+        }
+        return keys;
+    }
+
+    public static String decodeKey(ByteBuffer key) {
+        return StandardCharsets.UTF_8.decode(key.duplicate()).toString();
+    }
+
+    // Same output as String.getBytes(UTF_8), including '?' for unpaired surrogates, without the
+    // intermediate array.
+    static int writeUtf8(CharSequence value, byte[] target, int offset) {
+        int position = offset;
+        final int length = value.length();
+        for (int index = 0; index < length; index++) {
+            final char c = value.charAt(index);
+            if (c < 0x80) {
+                target[position++] = (byte) c;
+            } else if (c < 0x800) {
+                target[position++] = (byte) (0xC0 | (c >> 6));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && index + 1 < length
+                        && Character.isLowSurrogate(value.charAt(index + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++index));
+                    target[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    target[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    target[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    target[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    target[position++] = '?';
+                }
+            } else {
+                target[position++] = (byte) (0xE0 | (c >> 12));
+                target[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                target[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+}
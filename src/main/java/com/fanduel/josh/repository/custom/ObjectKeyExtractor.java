@@ -1,48 +1,297 @@
 package com.fanduel.josh.repository.custom;
 
 import com.fanduel.josh.cache.CacheConfig;
-import com.fanduel.josh.model.ComplexId3;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
+/**
+ * Turns IDs into the ID part of cache keys. Simple types are registered here, any other ID type is
+ * annotated with {@link CacheId} and gets an extractor whose {@link CacheKeyPart} getters are bound
+ * as lambdas. The annotated types under the application's packages are bound at startup, so a
+ * misconfigured ID fails the context rather than its first request; types found later on are
+ * bound the first time they are used.
+ */
 @Component
-public class ObjectKeyExtractor {
+public class ObjectKeyExtractor implements BeanFactoryAware {
 
-    private final Map<Class<?>, Function<?, String>> keyExtractors = new HashMap<>();
+    private interface KeyExtractor {
+
+        String extractKey(Object id);
+
+        void appendKey(Object id, StringBuilder target);
+    }
+
+    private final Map<Class<?>, KeyExtractor> keyExtractors = new HashMap<>();
+    // keyExtractors is only written from the constructor, so caching its lookups per class is safe.
+    private final ClassValue<KeyExtractor> extractorsByType = new ClassValue<>() {
+        @Override
+        protected KeyExtractor computeValue(Class<?> type) {
+            final KeyExtractor registered = keyExtractors.get(type);
+            if (registered != null || !type.isAnnotationPresent(CacheId.class)) {
+                return registered;
+            }
+            return bindCompositeExtractor(type);
+        }
+    };
 
     public ObjectKeyExtractor() {
-        registerExtractor(String.class, Function.identity());
-        registerExtractor(Integer.class, Object::toString);
-        registerExtractor(Double.class, Object::toString);
-        registerExtractor(Long.class, Object::toString);
-        registerExtractor(Instant.class, (instant) -> String.valueOf(instant.toEpochMilli()));
-        registerExtractor(ComplexId3.class, (ComplexId3 test) -> combineStrings(test.getTestString1(), test.getTestString2()));
+        registerExtractor(String.class, Function.identity(), (id, target) -> target.append(id));
+        registerExtractor(Integer.class, Object::toString, (id, target) -> target.append(id.intValue()));
+        registerExtractor(Double.class, Object::toString, (id, target) -> target.append(id.doubleValue()));
+        registerExtractor(Long.class, Object::toString, (id, target) -> target.append(id.longValue()));
+        registerExtractor(Instant.class, (instant) -> String.valueOf(instant.toEpochMilli()),
+                (instant, target) -> target.append(instant.toEpochMilli()));
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        if (AutoConfigurationPackages.has(beanFactory)) {
+            bindAnnotatedTypes(AutoConfigurationPackages.get(beanFactory));
+        }
     }
 
-    private String combineStrings(String... strings) {
-        return String.join(CacheConfig.KEY_DELIMITER, strings);
+    /**
+     * Binds the extractor of every {@link CacheId} type found under the given packages.
+     */
+    public void bindAnnotatedTypes(Collection<String> basePackages) {
+        final ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(CacheId.class));
+        for (String basePackage : basePackages) {
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+                getExtractor(ClassUtils.resolveClassName(candidate.getBeanClassName(), getClass().getClassLoader()));
+            }
+        }
     }
 
-    private <T> void registerExtractor(Class<T> tClass, Function<T, String> func) {
+    private <T> void registerExtractor(Class<T> tClass, Function<T, String> func, BiConsumer<T, StringBuilder> appender) {
         if (keyExtractors.containsKey(tClass)) {
             throw new DuplicateKeyException(tClass.getName() + " is already registered in " + getClass().getName());
         }
-        keyExtractors.put(tClass, func);
+        keyExtractors.put(tClass, new KeyExtractor() {
+            @Override
+            public String extractKey(Object id) {
+                return func.apply(tClass.cast(id));
+            }
+
+            @Override
+            public void appendKey(Object id, StringBuilder target) {
+                appender.accept(tClass.cast(id), target);
+            }
+        });
     }
 
-    @SuppressWarnings("unchecked")
     public <T> String extractKey(T obj) {
-        Function<T, String> extractor = (Function<T, String>) keyExtractors.get(obj.getClass());
+        return getExtractor(obj.getClass()).extractKey(obj);
+    }
+
+    /**
+     * Same key as {@link #extractKey(Object)}, appended without building it as a string first.
+     */
+    public <T> void appendKey(T obj, StringBuilder target) {
+        getExtractor(obj.getClass()).appendKey(obj, target);
+    }
+
+    private KeyExtractor getExtractor(Class<?> type) {
+        final KeyExtractor extractor = extractorsByType.get(type);
         if (extractor == null) {
-            throw new NoSuchElementException(obj.getClass().getName() + " is not registered in " + getClass().getName());
+            throw new NoSuchElementException(type.getName() + " is not registered in " + getClass().getName()
+                    + " nor annotated with @" + CacheId.class.getSimpleName());
+        }
+        return extractor;
+    }
+
+    private KeyExtractor bindCompositeExtractor(Class<?> type) {
+        final TreeMap<Integer, Function<Object, Object>> getters = new TreeMap<>();
+        final Map<Integer, Class<?>> partTypes = new HashMap<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                final CacheKeyPart part = field.getAnnotation(CacheKeyPart.class);
+                if (part != null) {
+                    checkInstanceMember(type, field.getName(), field.getModifiers());
+                    final Method accessor = findAccessor(current, field);
+                    addPart(type, getters, partTypes, part.value(),
+                            accessor != null ? bindGetter(type, accessor) : bindFieldGetter(type, field), field.getType());
+                }
+            }
+            for (Method method : current.getDeclaredMethods()) {
+                final CacheKeyPart part = method.getAnnotation(CacheKeyPart.class);
+                if (part != null) {
+                    checkInstanceMember(type, method.getName(), method.getModifiers());
+                    if (method.getParameterCount() != 0 || method.getReturnType() == void.class) {
+                        throw new RuntimeException("Key part " + method.getName() + " of " + type.getName()
+                                + " must take no arguments and return a value.");
+                    }
+                    addPart(type, getters, partTypes, part.value(), bindGetter(type, method), method.getReturnType());
+                }
+            }
+        }
+        if (getters.isEmpty()) {
+            throw new RuntimeException(type.getName() + " is annotated with @" + CacheId.class.getSimpleName()
+                    + " but has no @" + CacheKeyPart.class.getSimpleName() + " members.");
+        }
+
+        @SuppressWarnings("unchecked")
+        final Function<Object, Object>[] partGetters = new Function[getters.size()];
+        final KeyExtractor[] partExtractors = new KeyExtractor[getters.size()];
+        int index = 0;
+        for (Map.Entry<Integer, Function<Object, Object>> getter : getters.entrySet()) {
+            final Class<?> partType = partTypes.get(getter.getKey());
+            partGetters[index] = getter.getValue();
+            // A final part type cannot be subclassed, so its extractor can be bound up front.
+            if (Modifier.isFinal(partType.getModifiers()) && partType != type) {
+                partExtractors[index] = extractorsByType.get(partType);
+            }
+            index++;
+        }
+        return new CompositeKeyExtractor(type, partGetters, partExtractors);
+    }
+
+    private static void addPart(Class<?> type, Map<Integer, Function<Object, Object>> getters,
+                                Map<Integer, Class<?>> partTypes, int order, Function<Object, Object> getter,
+                                Class<?> partType) {
+        if (getters.putIfAbsent(order, getter) != null) {
+            throw new RuntimeException(type.getName() + " declares more than one key part at position " + order + ".");
         }
-        return extractor.apply(obj);
+        partTypes.put(order, MethodType.methodType(partType).wrap().returnType());
     }
 
+    // The getter, is-getter or record accessor of a key part field, which can be bound as a lambda.
+    private static Method findAccessor(Class<?> declaringClass, Field field) {
+        final String capitalized = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        for (String name : new String[]{"get" + capitalized, "is" + capitalized, field.getName()}) {
+            try {
+                final Method method = declaringClass.getDeclaredMethod(name);
+                if (method.getReturnType() == field.getType() && !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                // Try the next naming convention.
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Binds a getter method to a {@link Function} through {@link LambdaMetafactory}, which the JIT
+     * inlines like a direct call, unlike a method handle read from an array.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> bindGetter(Class<?> type, Method getter) {
+        final Class<?> declaringClass = getter.getDeclaringClass();
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+            return (Function<Object, Object>) LambdaMetafactory.metafactory(lookup, "apply",
+                            MethodType.methodType(Function.class),
+                            MethodType.methodType(Object.class, Object.class),
+                            lookup.unreflect(getter),
+                            MethodType.methodType(getter.getReturnType(), declaringClass).wrap())
+                    .getTarget()
+                    .invokeExact();
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot read key part " + getter.getName() + " of " + type.getName(), e);
+        }
+    }
+
+    // Lambdas cannot target fields directly, so fields without an accessor are read through a
+    // method handle.
+    private static Function<Object, Object> bindFieldGetter(Class<?> type, Field field) {
+        final MethodHandle getter;
+        try {
+            getter = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup())
+                    .unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Cannot read key part " + field.getName() + " of " + type.getName(), e);
+        }
+        return id -> {
+            try {
+                return (Object) getter.invokeExact(id);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    private static void checkInstanceMember(Class<?> type, String name, int modifiers) {
+        if (Modifier.isStatic(modifiers)) {
+            throw new RuntimeException("Key part " + name + " of " + type.getName() + " must not be static.");
+        }
+    }
+
+    private void appendPart(Object part, StringBuilder target) {
+        final KeyExtractor extractor = extractorsByType.get(part.getClass());
+        if (extractor != null) {
+            extractor.appendKey(part, target);
+        } else {
+            target.append(part);
+        }
+    }
+
+    private final class CompositeKeyExtractor implements KeyExtractor {
+
+        private final Class<?> type;
+        private final Function<Object, Object>[] partGetters;
+        private final KeyExtractor[] partExtractors;
+
+        private CompositeKeyExtractor(Class<?> type, Function<Object, Object>[] partGetters,
+                                      KeyExtractor[] partExtractors) {
+            this.type = type;
+            this.partGetters = partGetters;
+            this.partExtractors = partExtractors;
+        }
+
+        @Override
+        public String extractKey(Object id) {
+            final StringBuilder builder = new StringBuilder(32);
+            appendKey(id, builder);
+            return builder.toString();
+        }
+
+        @Override
+        public void appendKey(Object id, StringBuilder target) {
+            for (int index = 0; index < partGetters.length; index++) {
+                if (index > 0) {
+                    target.append(CacheConfig.KEY_DELIMITER);
+                }
+                final Object part;
+                try {
+                    part = partGetters[index].apply(id);
+                } catch (RuntimeException e) {
+                    throw new RuntimeException("Failed to read key part " + index + " of " + type.getName(), e);
+                }
+                if (part == null) {
+                    target.append((Object) null);
+                } else if (partExtractors[index] != null) {
+                    partExtractors[index].appendKey(part, target);
+                } else {
+                    appendPart(part, target);
+                }
+            }
+        }
+    }
 }
@@ -1,54 +1,204 @@
 package com.fanduel.josh.repository.custom;
 
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import com.fanduel.josh.cache.metrics.CacheMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.RequiredArgsConstructor;
+import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 @Repository
 @RequiredArgsConstructor
 public class ReactiveCaffeineRepository implements ReactiveCrudRepository {
 
+    private final CacheDetailsConfig cacheDetailsConfig;
+    private final CacheKeyResolver cacheKeyResolver;
+    private final CacheMetrics cacheMetrics;
+
+    private final Map<ClassKey, Cache<String, CacheEntry<?>>> caches = new EnumMap<>(ClassKey.class);
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            caches.put(classKey, buildCache(classKey));
+        }
+    }
+
+    // Unlike Redis there is no eviction policy behind this tier, so every cache is bounded and
+    // entries without a configured TTL fall back to the default one.
+    private Cache<String, CacheEntry<?>> buildCache(ClassKey classKey) {
+        long ttlInSeconds = cacheDetailsConfig.resolve(
+                classKey.getKey(), CacheDetailsConfig.CacheDetails::getTtlInSeconds, -1L);
+        Cache<String, CacheEntry<?>> cache = Caffeine.newBuilder()
+                .maximumSize(classKey.getMaxLocalEntries(cacheDetailsConfig))
+                .expireAfter(new CacheEntryExpiry(ttlInSeconds, classKey.getNegativeTtlInSeconds(cacheDetailsConfig)))
+                .recordStats()
+                .build();
+        cacheMetrics.monitorLocalCache(classKey, CacheMetrics.Tier.MEMORY, cache);
+        return cache;
+    }
 
     @Override
-    public <T> Mono<T> find(Class<T> tClass) {
-        throw new RuntimeException("Not Implemented Yet");
+    public <T> Mono<CacheEntry<T>> findEntry(@NonNull Class<T> tClass) {
+        final ClassKey classKey = getClassKey(tClass);
+        checkMultipleAllowed(classKey, false);
+        return lookup(classKey, classKey.generateKey(), tClass);
     }
 
     @Override
-    public <T, ID> Mono<T> findOne(Class<T> tClass, ID id) {
-        throw new RuntimeException("Not Implemented Yet");
+    public <T, ID> Mono<CacheEntry<T>> findOneEntry(@NonNull Class<T> tClass, @NonNull ID id) {
+        final ClassKey classKey = getClassKey(tClass);
+        checkMultipleAllowed(classKey, true);
+        return lookup(classKey, cacheKeyResolver.keyOf(classKey, id), tClass);
     }
 
     @Override
-    public <T, ID> Mono<Map<ID, T>> findMany(Class<T> tClass, Collection<ID> ids) {
-        throw new RuntimeException("Not Implemented Yet");
+    public <T, ID> Mono<Map<ID, CacheEntry<T>>> findManyEntries(@NonNull Class<T> tClass, @NonNull Collection<ID> idCollection) {
+        final ClassKey classKey = getClassKey(tClass);
+        checkMultipleAllowed(classKey, true);
+        final Map<String, ID> keyToId = new LinkedHashMap<>();
+        for (ID id : idCollection) {
+            if (id != null) {
+                keyToId.put(cacheKeyResolver.keyOf(classKey, id), id);
+            }
+        }
+        final Map<ID, CacheEntry<T>> keyValueMap = new HashMap<>();
+        caches.get(classKey).getAllPresent(keyToId.keySet())
+                .forEach((key, entry) -> keyValueMap.put(keyToId.get(key), cast(entry, tClass)));
+        cacheMetrics.recordTierGets(classKey, CacheMetrics.Tier.MEMORY,
+                keyValueMap.size(), keyToId.size() - keyValueMap.size());
+        return Mono.just(keyValueMap);
+    }
+
+    private <T> Mono<CacheEntry<T>> lookup(ClassKey classKey, String key, Class<T> tClass) {
+        final CacheEntry<?> cached = caches.get(classKey).getIfPresent(key);
+        cacheMetrics.recordTierGets(classKey, CacheMetrics.Tier.MEMORY, cached != null ? 1 : 0, cached != null ? 0 : 1);
+        return Mono.justOrEmpty(cast(cached, tClass));
     }
 
     @Override
-    public <T> Mono<T> save(T obj) {
-        throw new RuntimeException("Not Implemented Yet");
+    public <T> Mono<T> saveEntry(@NonNull CacheEntry<T> entry) {
+        final ClassKey classKey = getClassKey(entry.getType());
+        checkMultipleAllowed(classKey, false);
+        caches.get(classKey).put(classKey.generateKey(), entry);
+        return Mono.just(entry.getValue());
     }
 
     @Override
-    public <T, ID> Mono<T> save(T obj, ID id) {
-        throw new RuntimeException("Not Implemented Yet");
+    public <T, ID> Mono<T> saveEntry(@NonNull CacheEntry<T> entry, @NonNull ID id) {
+        final ClassKey classKey = getClassKey(entry.getType());
+        checkMultipleAllowed(classKey, true);
+        caches.get(classKey).put(cacheKeyResolver.keyOf(classKey, id), entry);
+        return Mono.just(entry.getValue());
     }
 
     @Override
-    public <T, ID> Mono<Boolean> saveMany(Map<ID, T> idValueMap) {
-        throw new RuntimeException("Not Implemented Yet");
+    public <T, ID> Mono<Boolean> saveManyEntries(@NonNull Map<ID, CacheEntry<T>> idEntryMap) {
+        if (idEntryMap.isEmpty()) {
+            return Mono.empty();
+        }
+        final ClassKey classKey = getClassKey(idEntryMap.values().stream()
+                .filter(Objects::nonNull)
+                .findAny()
+                .orElseThrow()
+                .getType());
+        checkMultipleAllowed(classKey, true);
+        final Map<String, CacheEntry<?>> keyValueMap = new HashMap<>();
+        idEntryMap.forEach((id, entry) -> {
+            if (id != null && entry != null) {
+                keyValueMap.put(cacheKeyResolver.keyOf(classKey, id), entry);
+            }
+        });
+        caches.get(classKey).putAll(keyValueMap);
+        return Mono.just(true);
     }
 
     @Override
     public <T> Mono<Boolean> delete(Class<T> tClass) {
-        throw new RuntimeException("Not Implemented Yet");
+        final ClassKey classKey = getClassKey(tClass);
+        checkMultipleAllowed(classKey, false);
+        return Mono.just(caches.get(classKey).asMap().remove(classKey.generateKey()) != null);
     }
 
     @Override
     public <T, ID> Mono<Boolean> deleteById(Class<T> tClass, ID id) {
-        throw new RuntimeException("Not Implemented Yet");
+        final ClassKey classKey = getClassKey(tClass);
+        checkMultipleAllowed(classKey, true);
+        final String key = cacheKeyResolver.keyOf(classKey, id);
+        return Mono.just(caches.get(classKey).asMap().remove(key) != null);
+    }
+
+    public <T, ID> Mono<Long> deleteManyById(Class<T> tClass, Collection<ID> ids) {
+        final ClassKey classKey = getClassKey(tClass);
+        checkMultipleAllowed(classKey, true);
+        final Map<String, CacheEntry<?>> cache = caches.get(classKey).asMap();
+        long deleted = 0;
+        for (ID id : ids) {
+            if (id != null && cache.remove(cacheKeyResolver.keyOf(classKey, id)) != null) {
+                deleted++;
+            }
+        }
+        return Mono.just(deleted);
+    }
+
+    public <T> Mono<Long> deleteAllOfType(Class<T> tClass) {
+        return deleteAllByKeyName(getClassKey(tClass).getKey());
+    }
+
+    public Mono<Long> deleteAllByKeyName(String keyName) {
+        final ClassKey classKey = ClassKey.fromKey(keyName)
+                .orElseThrow(() -> new RuntimeException("Invalid key provided."));
+        final Cache<String, CacheEntry<?>> cache = caches.get(classKey);
+        final long size = cache.estimatedSize();
+        cache.invalidateAll();
+        return Mono.just(size);
+    }
+
+    void putAll(ClassKey classKey, Map<String, CacheEntry<?>> keyEntryMap) {
+        caches.get(classKey).putAll(keyEntryMap);
+    }
+
+    Map<String, CacheEntry<?>> getAllPresent(ClassKey classKey, Collection<String> keys) {
+        return caches.get(classKey).getAllPresent(keys);
+    }
+
+    void invalidate(ClassKey classKey, String key) {
+        caches.get(classKey).invalidate(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CacheEntry<T> cast(CacheEntry<?> entry, Class<T> tClass) {
+        if (entry != null) {
+            tClass.cast(entry.getValue());
+        }
+        return (CacheEntry<T>) entry;
+    }
+
+    private ClassKey getClassKey(Class<?> type) {
+        return ClassKey.fromClass(type)
+                .orElseThrow(() ->
+                        new RuntimeException("Type " + type.getName() + " is not registered in ClassKey enum."));
+    }
+
+    private void checkMultipleAllowed(ClassKey classKey, boolean multipleAllowed) {
+        if (multipleAllowed != classKey.isMultipleItems()) {
+            if (classKey.isMultipleItems()) {
+                throw new RuntimeException("Multiple instances of " + classKey.getType().getName()
+                        + " can exist and therefore only methods including an ID should be used for this type.");
+            } else {
+                throw new RuntimeException("Only one instance of " + classKey.getType().getName()
+                        + " can exist and therefore no methods including an ID should be used for this type.");
+            }
+        }
     }
 }
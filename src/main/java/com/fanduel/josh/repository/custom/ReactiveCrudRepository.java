@@ -4,20 +4,61 @@ import org.springframework.lang.NonNull;
 import reactor.core.publisher.Mono;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 public interface ReactiveCrudRepository {
-    <T> Mono<T> find(Class<T> tClass);
+    <T> Mono<CacheEntry<T>> findEntry(Class<T> tClass);
 
-    <T, ID> Mono<T> findOne(Class<T> tClass, ID id);
+    <T, ID> Mono<CacheEntry<T>> findOneEntry(Class<T> tClass, ID id);
 
-    <T, ID> Mono<Map<ID, T>> findMany(Class<T> tClass, Collection<ID> idCollection);
+    <T, ID> Mono<Map<ID, CacheEntry<T>>> findManyEntries(Class<T> tClass, Collection<ID> idCollection);
 
-    <T> Mono<T> save(@NonNull T obj);
+    default <T> Mono<T> find(Class<T> tClass) {
+        return findEntry(tClass).flatMap(entry -> Mono.justOrEmpty(entry.getValue()));
+    }
 
-    <T, ID> Mono<T> save(@NonNull T obj, @NonNull ID id);
+    default <T, ID> Mono<T> findOne(Class<T> tClass, ID id) {
+        return findOneEntry(tClass, id).flatMap(entry -> Mono.justOrEmpty(entry.getValue()));
+    }
 
-    <T, ID> Mono<Boolean> saveMany(@NonNull Map<ID, T> idValueMap);
+    default <T, ID> Mono<Map<ID, T>> findMany(Class<T> tClass, Collection<ID> idCollection) {
+        return findManyEntries(tClass, idCollection)
+                .map(entries -> {
+                    Map<ID, T> values = new HashMap<>();
+                    entries.forEach((id, entry) -> {
+                        if (!entry.isAbsent()) {
+                            values.put(id, entry.getValue());
+                        }
+                    });
+                    return values;
+                });
+    }
+
+    <T> Mono<T> saveEntry(@NonNull CacheEntry<T> entry);
+
+    <T, ID> Mono<T> saveEntry(@NonNull CacheEntry<T> entry, @NonNull ID id);
+
+    /**
+     * Unlike the single entry methods, which return the saved value, this also accepts
+     * {@link CacheEntry#isAbsent() absent} entries.
+     */
+    <T, ID> Mono<Boolean> saveManyEntries(@NonNull Map<ID, CacheEntry<T>> idEntryMap);
+
+    default <T> Mono<T> save(@NonNull T obj) {
+        return saveEntry(CacheEntry.of(obj));
+    }
+
+    default <T, ID> Mono<T> save(@NonNull T obj, @NonNull ID id) {
+        return saveEntry(CacheEntry.of(obj), id);
+    }
+
+    default <T, ID> Mono<Boolean> saveMany(@NonNull Map<ID, T> idValueMap) {
+        final long writtenAtMillis = System.currentTimeMillis();
+        final Map<ID, CacheEntry<T>> idEntryMap = new HashMap<>();
+        idValueMap.forEach((id, value) -> idEntryMap.put(id, CacheEntry.of(value, writtenAtMillis)));
+        return saveManyEntries(idEntryMap);
+    }
 
     <T> Mono<Boolean> delete(Class<T> tClass);
 
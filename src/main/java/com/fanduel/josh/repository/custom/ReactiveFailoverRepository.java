@@ -0,0 +1,498 @@
+package com.fanduel.josh.repository.custom;
+
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import com.fanduel.josh.cache.EvictionTombstones;
+import com.fanduel.josh.cache.RedisCircuitBreaker;
+import com.fanduel.josh.cache.RedisShard;
+import com.fanduel.josh.cache.RedisShards;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Routes to {@link ReactiveNearCacheRepository} while the {@link RedisCircuitBreaker} is closed and
+ * to {@link ReactiveCaffeineRepository} otherwise.
+ * <p>
+ * For types with {@code warmFailoverEnabled} the in-memory tier is kept warm from successful Redis
+ * reads and writes, so an outage does not start cold. Writes that only reached the in-memory tier
+ * are remembered and replayed to Redis when the breaker closes again, newest write winning, instead
+ * of being discarded.
+ * <p>
+ * With {@link RedisShards sharding} each key is routed by the breaker of its shard as well, so an
+ * outage of one shard only sends the keys it owns to the in-memory tier. Batches spanning healthy
+ * and unhealthy shards are split between the two tiers.
+ * <p>
+ * Deletes record {@link EvictionTombstones}, so writes of the deleted keys still pending in the
+ * {@link com.fanduel.josh.cache.WriteBehindQueue} are dropped rather than written back. Deletes of
+ * any type made while Redis is unavailable are remembered too and replayed ahead of the writes,
+ * type-wide deletes first, so a deleted entry does not come back from Redis after the outage.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class ReactiveFailoverRepository implements ReactiveCrudRepository {
+
+    private final ReactiveNearCacheRepository reactiveNearCacheRepository;
+    private final ReactiveCaffeineRepository reactiveCaffeineRepository;
+    private final RedisCircuitBreaker redisCircuitBreaker;
+    private final RedisShards redisShards;
+    private final CacheDetailsConfig cacheDetailsConfig;
+    private final CacheKeyResolver cacheKeyResolver;
+    private final EvictionTombstones evictionTombstones;
+
+    private final Map<ClassKey, Set<String>> dirtyKeys = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, Set<String>> deletedKeys = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, AtomicBoolean> deletedAll = new EnumMap<>(ClassKey.class);
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final AtomicBoolean replayRequested = new AtomicBoolean();
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            if (classKey.isWarmFailoverEnabled(cacheDetailsConfig)) {
+                dirtyKeys.put(classKey, ConcurrentHashMap.newKeySet());
+            }
+            deletedKeys.put(classKey, ConcurrentHashMap.newKeySet());
+            deletedAll.put(classKey, new AtomicBoolean());
+        }
+        // Without sharding the only shard uses the spring.redis breaker.
+        for (RedisShard shard : redisShards.getShards()) {
+            shard.getCircuitBreaker().addListener((from, to) -> {
+                if (to == RedisCircuitBreaker.State.CLOSED) {
+                    replayDirtyEntries();
+                }
+            });
+        }
+    }
+
+    @Override
+    public <T> Mono<CacheEntry<T>> findEntry(@NonNull Class<T> tClass) {
+        final ClassKey classKey = getClassKey(tClass);
+        if (!isRedisAvailable(classKey.generateKey())) {
+            return reactiveCaffeineRepository.findEntry(tClass);
+        }
+        return reactiveNearCacheRepository.findEntry(tClass)
+                .doOnNext(entry -> warm(classKey, Map.of(classKey.generateKey(), entry)));
+    }
+
+    @Override
+    public <T, ID> Mono<CacheEntry<T>> findOneEntry(@NonNull Class<T> tClass, @NonNull ID id) {
+        final ClassKey classKey = getClassKey(tClass);
+        final String key = toKey(classKey, id);
+        if (!isRedisAvailable(key)) {
+            return reactiveCaffeineRepository.findOneEntry(tClass, id);
+        }
+        return reactiveNearCacheRepository.findOneEntry(tClass, id)
+                .doOnNext(entry -> warm(classKey, Map.of(key, entry)));
+    }
+
+    @Override
+    public <T, ID> Mono<Map<ID, CacheEntry<T>>> findManyEntries(@NonNull Class<T> tClass, @NonNull Collection<ID> idCollection) {
+        final ClassKey classKey = getClassKey(tClass);
+        if (!redisShards.isSharded()) {
+            return redisCircuitBreaker.isClosed()
+                    ? findManyInRedis(classKey, tClass, idCollection)
+                    : reactiveCaffeineRepository.findManyEntries(tClass, idCollection);
+        }
+        final List<ID> available = new ArrayList<>();
+        final List<ID> unavailable = new ArrayList<>();
+        for (ID id : idCollection) {
+            if (id != null) {
+                (redisShards.isAvailable(toKey(classKey, id)) ? available : unavailable).add(id);
+            }
+        }
+        if (unavailable.isEmpty()) {
+            return findManyInRedis(classKey, tClass, available);
+        }
+        if (available.isEmpty()) {
+            return reactiveCaffeineRepository.findManyEntries(tClass, unavailable);
+        }
+        return Mono.zip(
+                        findManyInRedis(classKey, tClass, available).defaultIfEmpty(Map.of()),
+                        reactiveCaffeineRepository.findManyEntries(tClass, unavailable).defaultIfEmpty(Map.of()))
+                .map(found -> {
+                    final Map<ID, CacheEntry<T>> entries = new HashMap<>(found.getT1());
+                    entries.putAll(found.getT2());
+                    return entries;
+                });
+    }
+
+    private <T, ID> Mono<Map<ID, CacheEntry<T>>> findManyInRedis(ClassKey classKey, Class<T> tClass, Collection<ID> ids) {
+        return reactiveNearCacheRepository.findManyEntries(tClass, ids)
+                .doOnNext(entries -> warm(classKey, toKeyEntryMap(classKey, entries)));
+    }
+
+    /**
+     * Writes of warmed types that Redis did not accept, for instance while the breaker has not
+     * opened yet, are kept in memory and replayed like any other write made during an outage.
+     */
+    @Override
+    public <T> Mono<T> saveEntry(@NonNull CacheEntry<T> entry) {
+        final ClassKey classKey = getClassKey(entry.getType());
+        final Map<String, CacheEntry<?>> keyEntryMap = Map.of(classKey.generateKey(), entry);
+        if (!isRedisAvailable(classKey.generateKey())) {
+            return reactiveCaffeineRepository.saveEntry(entry)
+                    .doOnNext(saved -> markDirty(classKey, keyEntryMap.keySet()));
+        }
+        return reactiveNearCacheRepository.saveEntry(entry)
+                .doOnNext(saved -> warm(classKey, keyEntryMap))
+                .switchIfEmpty(Mono.defer(() -> saveUnacknowledged(classKey, keyEntryMap, entry.getValue())));
+    }
+
+    @Override
+    public <T, ID> Mono<T> saveEntry(@NonNull CacheEntry<T> entry, @NonNull ID id) {
+        final ClassKey classKey = getClassKey(entry.getType());
+        final String key = toKey(classKey, id);
+        final Map<String, CacheEntry<?>> keyEntryMap = Map.of(key, entry);
+        if (!isRedisAvailable(key)) {
+            return reactiveCaffeineRepository.saveEntry(entry, id)
+                    .doOnNext(saved -> markDirty(classKey, keyEntryMap.keySet()));
+        }
+        return reactiveNearCacheRepository.saveEntry(entry, id)
+                .doOnNext(saved -> warm(classKey, keyEntryMap))
+                .switchIfEmpty(Mono.defer(() -> saveUnacknowledged(classKey, keyEntryMap, entry.getValue())));
+    }
+
+    @Override
+    public <T, ID> Mono<Boolean> saveManyEntries(@NonNull Map<ID, CacheEntry<T>> idEntryMap) {
+        if (idEntryMap.isEmpty()) {
+            return Mono.empty();
+        }
+        final ClassKey classKey = getClassKey(idEntryMap.values().stream()
+                .filter(Objects::nonNull)
+                .findAny()
+                .orElseThrow()
+                .getType());
+        if (!redisShards.isSharded()) {
+            return redisCircuitBreaker.isClosed()
+                    ? saveManyInRedis(classKey, idEntryMap)
+                    : saveManyInMemory(classKey, idEntryMap);
+        }
+        final Map<ID, CacheEntry<T>> available = new HashMap<>();
+        final Map<ID, CacheEntry<T>> unavailable = new HashMap<>();
+        idEntryMap.forEach((id, entry) -> {
+            if (id != null && entry != null) {
+                (redisShards.isAvailable(toKey(classKey, id)) ? available : unavailable).put(id, entry);
+            }
+        });
+        if (unavailable.isEmpty()) {
+            return saveManyInRedis(classKey, available);
+        }
+        if (available.isEmpty()) {
+            return saveManyInMemory(classKey, unavailable);
+        }
+        return Mono.zip(
+                        saveManyInRedis(classKey, available).defaultIfEmpty(false),
+                        saveManyInMemory(classKey, unavailable).defaultIfEmpty(false))
+                .map(saved -> saved.getT1() && saved.getT2());
+    }
+
+    private <T, ID> Mono<Boolean> saveManyInMemory(ClassKey classKey, Map<ID, CacheEntry<T>> idEntryMap) {
+        final Map<String, CacheEntry<?>> keyEntryMap = toKeyEntryMap(classKey, idEntryMap);
+        return reactiveCaffeineRepository.saveManyEntries(idEntryMap)
+                .doOnNext(saved -> markDirty(classKey, keyEntryMap.keySet()));
+    }
+
+    private <T, ID> Mono<Boolean> saveManyInRedis(ClassKey classKey, Map<ID, CacheEntry<T>> idEntryMap) {
+        final Map<String, CacheEntry<?>> keyEntryMap = toKeyEntryMap(classKey, idEntryMap);
+        return reactiveNearCacheRepository.saveManyEntries(idEntryMap)
+                .defaultIfEmpty(false)
+                .flatMap(saved -> {
+                    if (saved) {
+                        warm(classKey, keyEntryMap);
+                        return Mono.just(true);
+                    }
+                    return saveUnacknowledged(classKey, keyEntryMap, false).defaultIfEmpty(false);
+                });
+    }
+
+    @Override
+    public <T> Mono<Boolean> delete(Class<T> tClass) {
+        final ClassKey classKey = getClassKey(tClass);
+        evictionTombstones.evict(classKey, classKey.generateKey());
+        forget(classKey, classKey.generateKey());
+        if (!isRedisAvailable(classKey.generateKey())) {
+            markDeleted(classKey, classKey.generateKey());
+            return reactiveCaffeineRepository.delete(tClass);
+        }
+        return reactiveNearCacheRepository.delete(tClass);
+    }
+
+    @Override
+    public <T, ID> Mono<Boolean> deleteById(Class<T> tClass, ID id) {
+        final ClassKey classKey = getClassKey(tClass);
+        final String key = toKey(classKey, id);
+        evictionTombstones.evict(classKey, key);
+        forget(classKey, key);
+        if (!isRedisAvailable(key)) {
+            markDeleted(classKey, key);
+            return reactiveCaffeineRepository.deleteById(tClass, id);
+        }
+        return reactiveNearCacheRepository.deleteById(tClass, id);
+    }
+
+    /**
+     * Deletes the entries of the given IDs with one batched delete per tier, returning how many
+     * were removed.
+     */
+    public <T, ID> Mono<Long> deleteManyById(Class<T> tClass, Collection<ID> ids) {
+        final ClassKey classKey = getClassKey(tClass);
+        final List<ID> available = new ArrayList<>();
+        final List<ID> unavailable = new ArrayList<>();
+        for (ID id : ids) {
+            if (id != null) {
+                final String key = toKey(classKey, id);
+                evictionTombstones.evict(classKey, key);
+                forget(classKey, key);
+                if (isRedisAvailable(key)) {
+                    available.add(id);
+                } else {
+                    markDeleted(classKey, key);
+                    unavailable.add(id);
+                }
+            }
+        }
+        return Flux.concat(
+                        available.isEmpty() ? Mono.<Long>empty() : reactiveNearCacheRepository.deleteManyById(tClass, available),
+                        unavailable.isEmpty() ? Mono.<Long>empty() : reactiveCaffeineRepository.deleteManyById(tClass, unavailable))
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Drops every entry of the type from Redis and the in-memory tier, along with its writes still
+     * waiting to be replayed or written behind, so none of them comes back afterwards. While any
+     * shard is unavailable the Redis side is deferred to the next replay.
+     */
+    public <T> Mono<Long> deleteAllOfType(Class<T> tClass) {
+        return deleteAllByKeyName(getClassKey(tClass).getKey());
+    }
+
+    public Mono<Long> deleteAllByKeyName(String keyName) {
+        final ClassKey classKey = ClassKey.fromKey(keyName)
+                .orElseThrow(() -> new RuntimeException("Invalid key provided."));
+        evictionTombstones.evictAll(classKey);
+        final Set<String> dirty = dirtyKeys.get(classKey);
+        if (dirty != null) {
+            dirty.clear();
+        }
+        deletedKeys.get(classKey).clear();
+        if (!isEveryShardAvailable()) {
+            deletedAll.get(classKey).set(true);
+            log.info("Redis is unavailable, the {} entries it holds will be deleted once it recovers.", keyName);
+            return reactiveCaffeineRepository.deleteAllByKeyName(keyName);
+        }
+        return reactiveCaffeineRepository.deleteAllByKeyName(keyName)
+                .flatMap(inMemory -> reactiveNearCacheRepository.deleteAllByKeyName(keyName));
+    }
+
+    private <T> Mono<T> saveUnacknowledged(ClassKey classKey, Map<String, CacheEntry<?>> keyEntryMap, T result) {
+        if (!dirtyKeys.containsKey(classKey)) {
+            return Mono.empty();
+        }
+        reactiveCaffeineRepository.putAll(classKey, keyEntryMap);
+        markDirty(classKey, keyEntryMap.keySet());
+        return Mono.just(result);
+    }
+
+    private void warm(ClassKey classKey, Map<String, CacheEntry<?>> keyEntryMap) {
+        if (dirtyKeys.containsKey(classKey) && !keyEntryMap.isEmpty()) {
+            reactiveCaffeineRepository.putAll(classKey, keyEntryMap);
+        }
+    }
+
+    // The dirty set is bounded like the in-memory tier it points into, keys beyond that are not
+    // replayed and Redis keeps whatever it had for them.
+    private void markDirty(ClassKey classKey, Collection<String> keys) {
+        final Set<String> dirty = dirtyKeys.get(classKey);
+        if (dirty == null) {
+            return;
+        }
+        final long maxLocalEntries = classKey.getMaxLocalEntries(cacheDetailsConfig);
+        for (String key : keys) {
+            if (dirty.size() >= maxLocalEntries && !dirty.contains(key)) {
+                log.warn("Too many {} entries written during the Redis outage, {} will not be replayed.",
+                        classKey.getKey(), key);
+                continue;
+            }
+            dirty.add(key);
+            deletedKeys.get(classKey).remove(key);
+        }
+    }
+
+    // Past the bound of the in-memory tier the whole type is deleted on recovery instead, as a
+    // forgotten delete would bring a removed entry back.
+    private void markDeleted(ClassKey classKey, String key) {
+        final Set<String> deleted = deletedKeys.get(classKey);
+        if (deletedAll.get(classKey).get()) {
+            return;
+        }
+        if (deleted.size() >= classKey.getMaxLocalEntries(cacheDetailsConfig) && !deleted.contains(key)) {
+            log.warn("Too many {} entries deleted during the Redis outage, all of them will be deleted on recovery.",
+                    classKey.getKey());
+            deletedAll.get(classKey).set(true);
+            deleted.clear();
+            return;
+        }
+        deleted.add(key);
+    }
+
+    private void forget(ClassKey classKey, String key) {
+        final Set<String> dirty = dirtyKeys.get(classKey);
+        if (dirty != null) {
+            dirty.remove(key);
+            reactiveCaffeineRepository.invalidate(classKey, key);
+        }
+    }
+
+    // A shard recovering while a replay runs requests another pass, which starts once the running
+    // one is done, so no recovery goes without a replay of the keys it made available.
+    private void replayDirtyEntries() {
+        replayRequested.set(true);
+        if (!replaying.compareAndSet(false, true)) {
+            return;
+        }
+        replayRequested.set(false);
+        Flux.fromArray(ClassKey.values())
+                .concatMap(classKey -> replayDeletes(classKey)
+                        .then(Mono.defer(() -> dirtyKeys.containsKey(classKey)
+                                ? replay(classKey, dirtyKeys.get(classKey))
+                                : Mono.empty())))
+                .doFinally(signal -> {
+                    replaying.set(false);
+                    if (replayRequested.get()) {
+                        replayDirtyEntries();
+                    }
+                })
+                .subscribe();
+    }
+
+    // A type-wide delete needs every shard, single deletes only the shard owning their key. Failed
+    // deletes are kept for the next recovery.
+    private Mono<Long> replayDeletes(ClassKey classKey) {
+        final AtomicBoolean all = deletedAll.get(classKey);
+        if (all.get()) {
+            if (!isEveryShardAvailable()) {
+                return Mono.empty();
+            }
+            all.set(false);
+            return reactiveNearCacheRepository.deleteAllByKeyName(classKey.getKey())
+                    .doOnNext(deleted -> log.info("Replayed the outage delete of all {} entries, {} removed.",
+                            classKey.getKey(), deleted))
+                    .onErrorResume(e -> {
+                        log.warn("Replaying the delete of all {} entries failed, will retry on the next recovery: {}",
+                                classKey.getKey(), e.getMessage());
+                        all.set(true);
+                        return Mono.empty();
+                    });
+        }
+        final Set<String> deleted = deletedKeys.get(classKey);
+        final String prefix = cacheKeyResolver.getKeyPrefix(classKey);
+        final List<String> keys = new ArrayList<>();
+        final List<String> idKeys = new ArrayList<>();
+        for (String key : deleted) {
+            if (isRedisAvailable(key)) {
+                keys.add(key);
+                if (key.startsWith(prefix)) {
+                    idKeys.add(key.substring(prefix.length()));
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            return Mono.empty();
+        }
+        deleted.removeAll(keys);
+        final boolean single = keys.contains(classKey.generateKey());
+        // String IDs are their own key part, so the stored keys map back to the same Redis keys.
+        return Flux.concat(
+                        single ? reactiveNearCacheRepository.delete(classKey.getType()).map(d -> d ? 1L : 0L) : Mono.<Long>empty(),
+                        idKeys.isEmpty() ? Mono.<Long>empty() : reactiveNearCacheRepository.deleteManyById(classKey.getType(), idKeys))
+                .reduce(0L, Long::sum)
+                .doOnNext(removed -> log.info("Replayed {} outage deletes, {} removed, for {}.",
+                        keys.size(), removed, classKey.getKey()))
+                .onErrorResume(e -> {
+                    log.warn("Replaying {} deletes for {} failed, will retry on the next recovery: {}",
+                            keys.size(), classKey.getKey(), e.getMessage());
+                    keys.forEach(key -> markDeleted(classKey, key));
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Long> replay(ClassKey classKey, Set<String> dirty) {
+        if (dirty.isEmpty()) {
+            return Mono.empty();
+        }
+        // Keys of shards that are still down stay dirty until their own shard recovers.
+        final List<String> keys = new ArrayList<>(dirty.size());
+        for (String key : dirty) {
+            if (isRedisAvailable(key)) {
+                keys.add(key);
+            }
+        }
+        if (keys.isEmpty()) {
+            return Mono.empty();
+        }
+        dirty.removeAll(keys);
+        final Map<String, CacheEntry<?>> keyEntryMap = reactiveCaffeineRepository.getAllPresent(classKey, keys);
+        // Entries that cannot be encoded stay dirty rather than being lost with the replay.
+        return reactiveNearCacheRepository.replayEntries(classKey, keyEntryMap,
+                        key -> markDirty(classKey, List.of(key)))
+                .doOnNext(written -> log.info("Replayed {} entries, {} of which were newer than Redis, for {}.",
+                        keyEntryMap.size(), written, classKey.getKey()))
+                .onErrorResume(e -> {
+                    log.warn("Replaying {} entries for {} failed, will retry on the next recovery: {}",
+                            keyEntryMap.size(), classKey.getKey(), e.getMessage());
+                    markDirty(classKey, keyEntryMap.keySet());
+                    return Mono.empty();
+                });
+    }
+
+    // Only the breaker of the shard owning the key counts, which without sharding is the
+    // spring.redis one.
+    private boolean isRedisAvailable(String key) {
+        return redisShards.isAvailable(key);
+    }
+
+    private boolean isEveryShardAvailable() {
+        for (RedisShard shard : redisShards.getShards()) {
+            if (!shard.getCircuitBreaker().isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private <ID> String toKey(ClassKey classKey, ID id) {
+        return cacheKeyResolver.keyOf(classKey, id);
+    }
+
+    private <T, ID> Map<String, CacheEntry<?>> toKeyEntryMap(ClassKey classKey, Map<ID, CacheEntry<T>> idEntryMap) {
+        final Map<String, CacheEntry<?>> keyEntryMap = new HashMap<>();
+        idEntryMap.forEach((id, entry) -> {
+            if (id != null && entry != null) {
+                keyEntryMap.put(toKey(classKey, id), entry);
+            }
+        });
+        return keyEntryMap;
+    }
+
+    private ClassKey getClassKey(Class<?> type) {
+        return ClassKey.fromClass(type)
+                .orElseThrow(() ->
+                        new RuntimeException("Type " + type.getName() + " is not registered in ClassKey enum."));
+    }
+}
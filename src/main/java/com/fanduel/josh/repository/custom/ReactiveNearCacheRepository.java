@@ -0,0 +1,403 @@
+package com.fanduel.josh.repository.custom;
+
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import com.fanduel.josh.cache.metrics.CacheMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Repository;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Two-tier repository: a bounded in-process Caffeine tier per {@link ClassKey} in front of
+ * {@link ReactiveRedisRepository}. Writes and deletes publish an invalidation message so the local
+ * tier of every other node drops its copy of the key.
+ * <p>
+ * An invalidation carries the write time of the value that caused it, remembered per key for a
+ * while. A read that was already in flight and comes back with an older value is still returned
+ * but does not refill the local tier, so it cannot put back what was just invalidated.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class ReactiveNearCacheRepository implements ReactiveCrudRepository {
+
+    public static final String INVALIDATION_CHANNEL = "cache:invalidations";
+    private static final String MESSAGE_DELIMITER = "|";
+    // Separates the keys of a batch within one message, cache keys never contain a line break.
+    private static final String KEY_DELIMITER = "\n";
+    private static final String ALL_KEYS = "*";
+    // Far longer than any read that could still be in flight when an invalidation arrives.
+    private static final long INVALIDATION_MEMORY_SECONDS = 60;
+
+    private final ReactiveRedisRepository reactiveRedisRepository;
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private final CacheDetailsConfig cacheDetailsConfig;
+    private final CacheKeyResolver cacheKeyResolver;
+    private final CacheMetrics cacheMetrics;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<ClassKey, Cache<String, CacheEntry<?>>> localCaches = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, Cache<String, Long>> invalidatedAt = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, AtomicLong> clearedAt = new EnumMap<>(ClassKey.class);
+    private Disposable invalidationSubscription;
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            if (classKey.isNearCacheEnabled(cacheDetailsConfig)) {
+                localCaches.put(classKey, buildLocalCache(classKey));
+                invalidatedAt.put(classKey, Caffeine.newBuilder()
+                        .maximumSize(classKey.getMaxLocalEntries(cacheDetailsConfig))
+                        .expireAfterWrite(INVALIDATION_MEMORY_SECONDS, TimeUnit.SECONDS)
+                        .<String, Long>build());
+                clearedAt.put(classKey, new AtomicLong());
+            }
+        }
+        if (localCaches.isEmpty()) {
+            return;
+        }
+        // Any message published while we were not subscribed is lost, so every (re)subscription
+        // starts from an empty local tier.
+        invalidationSubscription = reactiveStringRedisTemplate.listenToChannel(INVALIDATION_CHANNEL)
+                .doOnSubscribe(subscription -> localCaches.values().forEach(Cache::invalidateAll))
+                .map(ReactiveSubscription.Message::getMessage)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::onInvalidation);
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        if (invalidationSubscription != null) {
+            invalidationSubscription.dispose();
+        }
+    }
+
+    private Cache<String, CacheEntry<?>> buildLocalCache(ClassKey classKey) {
+        Cache<String, CacheEntry<?>> cache = Caffeine.newBuilder()
+                .maximumSize(classKey.getMaxLocalEntries(cacheDetailsConfig))
+                .expireAfter(new CacheEntryExpiry(
+                        classKey.getTtlInSeconds(cacheDetailsConfig),
+                        classKey.getNegativeTtlInSeconds(cacheDetailsConfig)))
+                .recordStats()
+                .build();
+        cacheMetrics.monitorLocalCache(classKey, CacheMetrics.Tier.NEAR, cache);
+        return cache;
+    }
+
+    @Override
+    public <T> Mono<CacheEntry<T>> findEntry(@NonNull Class<T> tClass) {
+        final ClassKey classKey = getClassKey(tClass);
+        final Cache<String, CacheEntry<?>> localCache = localCaches.get(classKey);
+        if (localCache == null) {
+            return reactiveRedisRepository.findEntry(tClass);
+        }
+        final String key = classKey.generateKey();
+        CacheEntry<?> cached = localCache.getIfPresent(key);
+        cacheMetrics.recordTierGets(classKey, CacheMetrics.Tier.NEAR, cached != null ? 1 : 0, cached != null ? 0 : 1);
+        if (cached != null) {
+            return Mono.just(cast(cached, tClass));
+        }
+        return reactiveRedisRepository.findEntry(tClass)
+                .doOnNext(entry -> putIfCurrent(classKey, key, entry));
+    }
+
+    @Override
+    public <T, ID> Mono<CacheEntry<T>> findOneEntry(@NonNull Class<T> tClass, @NonNull ID id) {
+        final ClassKey classKey = getClassKey(tClass);
+        final Cache<String, CacheEntry<?>> localCache = localCaches.get(classKey);
+        if (localCache == null) {
+            return reactiveRedisRepository.findOneEntry(tClass, id);
+        }
+        final String key = cacheKeyResolver.keyOf(classKey, id);
+        CacheEntry<?> cached = localCache.getIfPresent(key);
+        cacheMetrics.recordTierGets(classKey, CacheMetrics.Tier.NEAR, cached != null ? 1 : 0, cached != null ? 0 : 1);
+        if (cached != null) {
+            return Mono.just(cast(cached, tClass));
+        }
+        return reactiveRedisRepository.findOneEntry(tClass, id)
+                .doOnNext(entry -> putIfCurrent(classKey, key, entry));
+    }
+
+    @Override
+    public <T, ID> Mono<Map<ID, CacheEntry<T>>> findManyEntries(@NonNull Class<T> tClass, @NonNull Collection<ID> idCollection) {
+        final ClassKey classKey = getClassKey(tClass);
+        final Cache<String, CacheEntry<?>> localCache = localCaches.get(classKey);
+        if (localCache == null) {
+            return reactiveRedisRepository.findManyEntries(tClass, idCollection);
+        }
+        final Map<String, ID> keyToId = new LinkedHashMap<>();
+        for (ID id : idCollection) {
+            if (id != null) {
+                keyToId.put(cacheKeyResolver.keyOf(classKey, id), id);
+            }
+        }
+        final Map<ID, CacheEntry<T>> responseMap = new HashMap<>();
+        localCache.getAllPresent(keyToId.keySet())
+                .forEach((key, entry) -> responseMap.put(keyToId.get(key), cast(entry, tClass)));
+        cacheMetrics.recordTierGets(classKey, CacheMetrics.Tier.NEAR,
+                responseMap.size(), keyToId.size() - responseMap.size());
+        if (responseMap.size() == keyToId.size()) {
+            return Mono.just(responseMap);
+        }
+        final List<ID> missingIds = new ArrayList<>(keyToId.size() - responseMap.size());
+        for (ID id : keyToId.values()) {
+            if (!responseMap.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+        return reactiveRedisRepository.findManyEntries(tClass, missingIds)
+                .map(fetched -> {
+                    fetched.forEach((id, entry) ->
+                            putIfCurrent(classKey, cacheKeyResolver.keyOf(classKey, id), entry));
+                    responseMap.putAll(fetched);
+                    return responseMap;
+                })
+                .defaultIfEmpty(responseMap);
+    }
+
+    @Override
+    public <T> Mono<T> saveEntry(@NonNull CacheEntry<T> entry) {
+        final ClassKey classKey = getClassKey(entry.getType());
+        final Cache<String, CacheEntry<?>> localCache = localCaches.get(classKey);
+        if (localCache == null) {
+            return reactiveRedisRepository.saveEntry(entry);
+        }
+        final String key = classKey.generateKey();
+        applyInvalidation(classKey, key, entry.getWrittenAtMillis());
+        return reactiveRedisRepository.saveEntry(entry)
+                .flatMap(saved -> {
+                    putIfCurrent(classKey, key, entry);
+                    return publishInvalidation(classKey, key, entry.getWrittenAtMillis()).thenReturn(saved);
+                });
+    }
+
+    @Override
+    public <T, ID> Mono<T> saveEntry(@NonNull CacheEntry<T> entry, @NonNull ID id) {
+        final ClassKey classKey = getClassKey(entry.getType());
+        final Cache<String, CacheEntry<?>> localCache = localCaches.get(classKey);
+        if (localCache == null) {
+            return reactiveRedisRepository.saveEntry(entry, id);
+        }
+        final String key = cacheKeyResolver.keyOf(classKey, id);
+        applyInvalidation(classKey, key, entry.getWrittenAtMillis());
+        return reactiveRedisRepository.saveEntry(entry, id)
+                .flatMap(saved -> {
+                    putIfCurrent(classKey, key, entry);
+                    return publishInvalidation(classKey, key, entry.getWrittenAtMillis()).thenReturn(saved);
+                });
+    }
+
+    @Override
+    public <T, ID> Mono<Boolean> saveManyEntries(@NonNull Map<ID, CacheEntry<T>> idEntryMap) {
+        if (idEntryMap.isEmpty()) {
+            return Mono.empty();
+        }
+        final ClassKey classKey = getClassKey(idEntryMap.values().stream()
+                .filter(Objects::nonNull)
+                .findAny()
+                .orElseThrow()
+                .getType());
+        final Cache<String, CacheEntry<?>> localCache = localCaches.get(classKey);
+        if (localCache == null) {
+            return reactiveRedisRepository.saveManyEntries(idEntryMap);
+        }
+        final Map<String, CacheEntry<?>> keyValueMap = new HashMap<>();
+        idEntryMap.forEach((id, entry) ->
+                keyValueMap.put(cacheKeyResolver.keyOf(classKey, id), entry));
+        final Map<String, Long> keyWrittenAt = writtenAtOf(keyValueMap);
+        keyWrittenAt.forEach((key, writtenAtMillis) -> applyInvalidation(classKey, key, writtenAtMillis));
+        return reactiveRedisRepository.saveManyEntries(idEntryMap)
+                .flatMap(saved -> {
+                    if (!saved) {
+                        return Mono.just(false);
+                    }
+                    keyValueMap.forEach((key, entry) -> putIfCurrent(classKey, key, entry));
+                    return publishInvalidations(classKey, keyWrittenAt).thenReturn(true);
+                });
+    }
+
+    @Override
+    public <T> Mono<Boolean> delete(Class<T> tClass) {
+        final ClassKey classKey = getClassKey(tClass);
+        final String key = classKey.generateKey();
+        final long now = System.currentTimeMillis();
+        applyInvalidation(classKey, key, now);
+        return reactiveRedisRepository.delete(tClass)
+                .flatMap(deleted -> publishIfNearCached(classKey, key, now).thenReturn(deleted));
+    }
+
+    @Override
+    public <T, ID> Mono<Boolean> deleteById(Class<T> tClass, ID id) {
+        final ClassKey classKey = getClassKey(tClass);
+        final String key = cacheKeyResolver.keyOf(classKey, id);
+        final long now = System.currentTimeMillis();
+        applyInvalidation(classKey, key, now);
+        return reactiveRedisRepository.deleteById(tClass, id)
+                .flatMap(deleted -> publishIfNearCached(classKey, key, now).thenReturn(deleted));
+    }
+
+    public <T, ID> Mono<Long> deleteManyById(Class<T> tClass, Collection<ID> ids) {
+        final ClassKey classKey = getClassKey(tClass);
+        final long now = System.currentTimeMillis();
+        final Map<String, Long> keyWrittenAt = new HashMap<>();
+        for (ID id : ids) {
+            if (id != null) {
+                final String key = cacheKeyResolver.keyOf(classKey, id);
+                applyInvalidation(classKey, key, now);
+                keyWrittenAt.put(key, now);
+            }
+        }
+        return reactiveRedisRepository.deleteManyById(tClass, ids)
+                .flatMap(deleted -> localCaches.containsKey(classKey) && !keyWrittenAt.isEmpty()
+                        ? publishInvalidations(classKey, keyWrittenAt).thenReturn(deleted)
+                        : Mono.just(deleted));
+    }
+
+    public <T> Mono<Long> deleteAllOfType(Class<T> tClass) {
+        return deleteAllByKeyName(getClassKey(tClass).getKey());
+    }
+
+    public Mono<Long> deleteAllByKeyName(String keyName) {
+        final ClassKey classKey = ClassKey.fromKey(keyName)
+                .orElseThrow(() -> new RuntimeException("Invalid key provided."));
+        final long now = System.currentTimeMillis();
+        applyInvalidation(classKey, ALL_KEYS, now);
+        return reactiveRedisRepository.deleteAllByKeyName(keyName)
+                .defaultIfEmpty(0L)
+                .flatMap(deleted -> publishIfNearCached(classKey, ALL_KEYS, now).thenReturn(deleted));
+    }
+
+    /**
+     * See {@link ReactiveRedisRepository#replayEntries(ClassKey, Map, Consumer)}. Replayed keys are dropped
+     * from the local tier of every node as whichever value won is now only known to Redis.
+     */
+    public Mono<Long> replayEntries(@NonNull ClassKey classKey, @NonNull Map<String, CacheEntry<?>> keyEntryMap,
+                                    @NonNull Consumer<String> onEncodingFailure) {
+        final Map<String, Long> keyWrittenAt = writtenAtOf(keyEntryMap);
+        keyWrittenAt.forEach((key, writtenAtMillis) -> applyInvalidation(classKey, key, writtenAtMillis));
+        return reactiveRedisRepository.replayEntries(classKey, keyEntryMap, onEncodingFailure)
+                .flatMap(written -> localCaches.containsKey(classKey)
+                        ? publishInvalidations(classKey, keyWrittenAt).thenReturn(written)
+                        : Mono.just(written));
+    }
+
+    private Mono<Long> publishIfNearCached(ClassKey classKey, String key, long writtenAtMillis) {
+        if (!localCaches.containsKey(classKey)) {
+            return Mono.empty();
+        }
+        return publishInvalidation(classKey, key, writtenAtMillis);
+    }
+
+    private Mono<Long> publishInvalidation(ClassKey classKey, String key, long writtenAtMillis) {
+        return publishInvalidations(classKey, Map.of(key, writtenAtMillis));
+    }
+
+    // One message for the whole batch, so a saveMany costs a single PUBLISH. Each line is the
+    // write time of the new value, a space and the key.
+    private Mono<Long> publishInvalidations(ClassKey classKey, Map<String, Long> keyWrittenAt) {
+        if (keyWrittenAt.isEmpty()) {
+            return Mono.empty();
+        }
+        final StringJoiner lines = new StringJoiner(KEY_DELIMITER);
+        keyWrittenAt.forEach((key, writtenAtMillis) -> lines.add(writtenAtMillis + " " + key));
+        return reactiveStringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL,
+                        nodeId + MESSAGE_DELIMITER + classKey.getKey() + MESSAGE_DELIMITER + lines)
+                .onErrorResume(throwable -> {
+                    log.warn("Failed to publish invalidation of {} {} keys: {}",
+                            keyWrittenAt.size(), classKey.getKey(), throwable.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private void onInvalidation(String message) {
+        String[] parts = message.split("\\" + MESSAGE_DELIMITER, 3);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        ClassKey.fromKey(parts[1]).ifPresent(classKey -> {
+            for (String line : parts[2].split(KEY_DELIMITER)) {
+                final int separator = line.indexOf(' ');
+                try {
+                    applyInvalidation(classKey, line.substring(separator + 1),
+                            Long.parseLong(line.substring(0, separator)));
+                } catch (RuntimeException e) {
+                    // A message without write times, from a node running an older version.
+                    applyInvalidation(classKey, line, CacheEntry.UNKNOWN);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the key from the local tier and remembers that values written before
+     * {@code writtenAtMillis} are out of date.
+     */
+    private void applyInvalidation(ClassKey classKey, String key, long writtenAtMillis) {
+        Cache<String, CacheEntry<?>> localCache = localCaches.get(classKey);
+        if (localCache == null) {
+            return;
+        }
+        if (ALL_KEYS.equals(key)) {
+            clearedAt.get(classKey).accumulateAndGet(writtenAtMillis, Math::max);
+            localCache.invalidateAll();
+        } else {
+            invalidatedAt.get(classKey).asMap().merge(key, writtenAtMillis, Math::max);
+            localCache.invalidate(key);
+        }
+    }
+
+    // Puts first and checks after: an invalidation racing with the put either is seen by the
+    // check or invalidates the key after the put.
+    private void putIfCurrent(ClassKey classKey, String key, CacheEntry<?> entry) {
+        final Cache<String, CacheEntry<?>> localCache = localCaches.get(classKey);
+        localCache.put(key, entry);
+        final Long keyInvalidatedAt = invalidatedAt.get(classKey).getIfPresent(key);
+        final long floor = Math.max(clearedAt.get(classKey).get(), keyInvalidatedAt != null ? keyInvalidatedAt : 0L);
+        if (entry.getWrittenAtMillis() < floor) {
+            localCache.asMap().remove(key, entry);
+        }
+    }
+
+    private static Map<String, Long> writtenAtOf(Map<String, CacheEntry<?>> keyEntryMap) {
+        final Map<String, Long> keyWrittenAt = new HashMap<>();
+        keyEntryMap.forEach((key, entry) -> keyWrittenAt.put(key, entry.getWrittenAtMillis()));
+        return keyWrittenAt;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CacheEntry<T> cast(CacheEntry<?> entry, Class<T> tClass) {
+        tClass.cast(entry.getValue());
+        return (CacheEntry<T>) entry;
+    }
+
+    private ClassKey getClassKey(Class<?> type) {
+        return ClassKey.fromClass(type)
+                .orElseThrow(() ->
+                        new RuntimeException("Type " + type.getName() + " is not registered in ClassKey enum."));
+    }
+}
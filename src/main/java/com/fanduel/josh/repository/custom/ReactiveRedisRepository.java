@@ -1,122 +1,217 @@
 package com.fanduel.josh.repository.custom;
 
-import com.fanduel.josh.cache.CacheConfig;
 import com.fanduel.josh.cache.CacheDetailsConfig;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fanduel.josh.cache.RedisCircuitBreaker;
+import com.fanduel.josh.cache.RedisShard;
+import com.fanduel.josh.cache.RedisShards;
+import com.fanduel.josh.cache.metrics.CacheMetrics;
+import com.fanduel.josh.repository.custom.codec.ValueCodecs;
+import com.google.common.collect.Iterables;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class ReactiveRedisRepository implements ReactiveCrudRepository {
 
-    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final RedisScript<Long> SET_MANY_WITH_TTL =
+            RedisScript.of(new ClassPathResource("scripts/set_many_with_ttl.lua"), Long.class);
+    private static final RedisScript<Long> SET_MANY_IF_NEWER =
+            RedisScript.of(new ClassPathResource("scripts/set_many_if_newer.lua"), Long.class);
+
+    private final RedisShards redisShards;
     private final CacheDetailsConfig cacheDetailsConfig;
     private final ObjectKeyExtractor idKeyExtractor;
+    private final CacheKeyResolver cacheKeyResolver;
+    private final KeyEncoder keyEncoder;
+    private final RedisHashStore redisHashStore;
+    private final SlotRouter slotRouter;
+    private final ValueCodecs valueCodecs;
+    private final RedisCircuitBreaker redisCircuitBreaker;
+    private final CacheMetrics cacheMetrics;
+
+    private final Set<ClassKey> replicaReadTypes = EnumSet.noneOf(ClassKey.class);
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            if (classKey.isReplicaReadsEnabled(cacheDetailsConfig)) {
+                replicaReadTypes.add(classKey);
+            }
+        }
+    }
 
     @Override
-    public <T> Mono<T> find(@NonNull Class<T> tClass) {
+    public <T> Mono<CacheEntry<T>> findEntry(@NonNull Class<T> tClass) {
         final ClassKey classKey = getClassKey(tClass);
         checkMultipleAllowed(classKey, false);
         final String key = classKey.generateKey();
-        return fetchKey(key, tClass);
+        final RedisShard shard = redisShards.forKey(key);
+        return fetchKey(classKey, key, shard.getCircuitBreaker(), readTemplate(classKey, shard).opsForValue().get(key), tClass);
     }
 
     @Override
-    public <T, ID> Mono<T> findOne(@NonNull Class<T> tClass, @NonNull ID id) {
+    public <T, ID> Mono<CacheEntry<T>> findOneEntry(@NonNull Class<T> tClass, @NonNull ID id) {
         final ClassKey classKey = getClassKey(tClass);
         checkMultipleAllowed(classKey, true);
-        final String key = classKey.generateKey(idKeyExtractor.extractKey(id));
-        return fetchKey(key, tClass);
+        final String idKey = idKeyExtractor.extractKey(id);
+        final String key = cacheKeyResolver.generateKey(classKey, idKey);
+        if (redisHashStore.isEnabled(classKey)) {
+            return fetchKey(classKey, key, redisCircuitBreaker,
+                    redisHashStore.get(classKey, idKey).map(ReactiveRedisRepository::toBytes), tClass);
+        }
+        final RedisShard shard = redisShards.forKey(key);
+        return fetchKey(classKey, key, shard.getCircuitBreaker(), readTemplate(classKey, shard).opsForValue().get(key), tClass);
     }
 
-    private <T> Mono<T> fetchKey(String key, Class<T> tClass) {
-        return reactiveStringRedisTemplate.opsForValue()
-                .get(key)
-                .map(string -> {
+    private <T> Mono<CacheEntry<T>> fetchKey(ClassKey classKey, String key, RedisCircuitBreaker circuitBreaker,
+                                             Mono<byte[]> read, Class<T> tClass) {
+        final long now = System.currentTimeMillis();
+        return circuitBreaker.monitor(read)
+                .<CacheEntry<T>>handle((bytes, sink) -> {
+                    if (bytes.length == 0) {
+                        return;
+                    }
+                    cacheMetrics.recordPayloadRead(classKey, bytes.length);
                     try {
-                        return deserializeDataFromJson(string, tClass);
-                    } catch (JsonProcessingException e) {
-                        e.printStackTrace();
-                        reactiveStringRedisTemplate.opsForValue().delete(key)
-                                .toFuture();
-                        return null;
+                        final CacheEntry<T> entry = deserializeData(classKey, bytes, tClass);
+                        if (!isSweepPending(classKey, entry, now)) {
+                            sink.next(entry);
+                        }
+                    } catch (IOException e) {
+                        onDeserializationFailure(classKey, key, e);
                     }
-                }).onErrorResume(this::handleError);
+                })
+                .doOnSuccess(entry -> cacheMetrics.recordTierGets(
+                        classKey, CacheMetrics.Tier.REDIS, entry != null ? 1 : 0, entry != null ? 0 : 1))
+                .onErrorResume(this::handleError);
     }
 
     @Override
-    public <T, ID> Mono<Map<ID, T>> findMany(@NonNull Class<T> tClass, @NonNull Collection<ID> idCollection) {
+    public <T, ID> Mono<Map<ID, CacheEntry<T>>> findManyEntries(@NonNull Class<T> tClass, @NonNull Collection<ID> idCollection) {
         List<ID> ids = new ArrayList<>(idCollection);
         final ClassKey classKey = getClassKey(tClass);
         checkMultipleAllowed(classKey, true);
         ids.removeIf(Objects::isNull);
-        final List<String> keys = ids.stream()
-                .map(id -> classKey.generateKey(idKeyExtractor.extractKey(id)))
-                .collect(Collectors.toList());
-        return reactiveStringRedisTemplate.opsForValue()
-                .multiGet(keys)
-                .map(stringValues -> {
-                    Map<ID, T> keyValueMap = new HashMap<>();
-                    for (int index = 0; index < stringValues.size(); index++) {
+        final Mono<List<ByteBuffer>> read;
+        final IntFunction<String> keyAt;
+        if (redisHashStore.isEnabled(classKey)) {
+            final List<String> idKeys = new ArrayList<>(ids.size());
+            for (ID id : ids) {
+                idKeys.add(idKeyExtractor.extractKey(id));
+            }
+            read = redisCircuitBreaker.monitorBulk(redisHashStore.getAll(classKey, idKeys));
+            keyAt = index -> cacheKeyResolver.generateKey(classKey, idKeys.get(index));
+        } else {
+            final List<ByteBuffer> keys = keyEncoder.encodeKeys(classKey, ids);
+            read = mGet(classKey, keys);
+            keyAt = index -> KeyEncoder.decodeKey(keys.get(index));
+        }
+        final long now = System.currentTimeMillis();
+        return read
+                .map(values -> {
+                    Map<ID, CacheEntry<T>> keyValueMap = new HashMap<>();
+                    for (int index = 0; index < values.size(); index++) {
                         try {
-                            String value = stringValues.get(index);
-                            if (StringUtils.hasText(value)) {
-                                keyValueMap.put(
-                                        ids.get(index),
-                                        deserializeDataFromJson(value, tClass)
-                                );
+                            ByteBuffer value = values.get(index);
+                            if (value != null && value.hasRemaining()) {
+                                cacheMetrics.recordPayloadRead(classKey, value.remaining());
+                                final CacheEntry<T> entry = deserializeData(classKey, toBytes(value), tClass);
+                                if (!isSweepPending(classKey, entry, now)) {
+                                    keyValueMap.put(ids.get(index), entry);
+                                }
                             }
-                        } catch (JsonProcessingException e) {
-                            e.printStackTrace();
-                            reactiveStringRedisTemplate.opsForValue().delete(keys.get(index))
-                                    .toFuture();
+                        } catch (IOException e) {
+                            onDeserializationFailure(classKey, keyAt.apply(index), e);
                         }
                     }
+                    cacheMetrics.recordTierGets(classKey, CacheMetrics.Tier.REDIS,
+                            keyValueMap.size(), ids.size() - keyValueMap.size());
                     return keyValueMap;
                 }).onErrorResume(this::handleError);
     }
 
+    // One MGET per shard, sent in parallel. A failing shard only loses its own keys, which read as
+    // missing, while a single shard fails the whole read as before.
+    private Mono<List<ByteBuffer>> mGet(ClassKey classKey, List<ByteBuffer> keys) {
+        if (!redisShards.isSharded()) {
+            final RedisShard shard = redisShards.getShards().get(0);
+            return shard.getCircuitBreaker().monitorBulk(slotRouter.mGet(readTemplate(classKey, shard), keys));
+        }
+        final Map<RedisShard, List<Integer>> indexesByShard = new HashMap<>();
+        for (int index = 0; index < keys.size(); index++) {
+            indexesByShard.computeIfAbsent(redisShards.forKey(keys.get(index)), shard -> new ArrayList<>()).add(index);
+        }
+        final ByteBuffer[] values = new ByteBuffer[keys.size()];
+        return Flux.fromIterable(indexesByShard.entrySet())
+                .flatMap(shard -> {
+                    final List<Integer> indexes = shard.getValue();
+                    final List<ByteBuffer> shardKeys = new ArrayList<>(indexes.size());
+                    for (int index : indexes) {
+                        shardKeys.add(keys.get(index));
+                    }
+                    return shard.getKey().getCircuitBreaker()
+                            .monitorBulk(slotRouter.mGet(readTemplate(classKey, shard.getKey()), shardKeys))
+                            .doOnNext(shardValues -> {
+                                for (int i = 0; i < shardValues.size(); i++) {
+                                    values[indexes.get(i)] = shardValues.get(i);
+                                }
+                            })
+                            .onErrorResume(this::handleError);
+                })
+                .then(Mono.fromSupplier(() -> Arrays.asList(values)));
+    }
+
+    // Writes and deletes always go to the primary.
+    private ReactiveRedisTemplate<String, byte[]> readTemplate(ClassKey classKey, RedisShard shard) {
+        return replicaReadTypes.contains(classKey) ? shard.getReadTemplate() : shard.getTemplate();
+    }
+
     @Override
-    public <T> Mono<T> save(@NonNull T obj) {
-        final ClassKey classKey = getClassKey(obj.getClass());
+    public <T> Mono<T> saveEntry(@NonNull CacheEntry<T> entry) {
+        final ClassKey classKey = getClassKey(entry.getType());
         checkMultipleAllowed(classKey, false);
         try {
-            return reactiveStringRedisTemplate.opsForValue().set(
-                            classKey.generateKey(),
-                            serializeDataToJson(obj),
-                            Duration.ofSeconds(classKey.getTtlInSeconds(cacheDetailsConfig)))
-                    .map((set) -> obj)
+            return setValue(classKey, classKey.generateKey(), entry, serializeData(classKey, entry))
+                    .map((set) -> entry.getValue())
                     .onErrorResume(this::handleError);
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             e.printStackTrace();
             return Mono.empty();
         }
     }
 
     @Override
-    public <T, ID> Mono<T> save(@NonNull T obj, @NonNull ID id) {
-        final ClassKey classKey = getClassKey(obj.getClass());
+    public <T, ID> Mono<T> saveEntry(@NonNull CacheEntry<T> entry, @NonNull ID id) {
+        final ClassKey classKey = getClassKey(entry.getType());
         checkMultipleAllowed(classKey, true);
         if (!classKey.isMultipleItems()) {
             throw new RuntimeException("Only one instance of " + classKey.getType().getName()
@@ -124,64 +219,268 @@ public class ReactiveRedisRepository implements ReactiveCrudRepository {
                     + " Use overloaded save method without ID included.");
         }
         try {
-            return reactiveStringRedisTemplate.opsForValue().set(
-                            classKey.generateKey(idKeyExtractor.extractKey(id)),
-                            serializeDataToJson(obj),
-                            Duration.ofSeconds(classKey.getTtlInSeconds(cacheDetailsConfig))
-                    )
-                    .map((set) -> obj)
+            final String idKey = idKeyExtractor.extractKey(id);
+            if (redisHashStore.isEnabled(classKey)) {
+                final RedisHashStore.Write write = new RedisHashStore.Write(idKey, serializeData(classKey, entry));
+                return redisCircuitBreaker.monitor(redisHashStore.putAll(classKey, List.of(write), false))
+                        .filter(written -> written > 0)
+                        .map(written -> entry.getValue())
+                        .onErrorResume(this::handleError);
+            }
+            return setValue(classKey, cacheKeyResolver.generateKey(classKey, idKey), entry, serializeData(classKey, entry))
+                    .map((set) -> entry.getValue())
                     .onErrorResume(this::handleError);
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             e.printStackTrace();
             return Mono.empty();
         }
     }
 
+    private Mono<Boolean> setValue(ClassKey classKey, String key, CacheEntry<?> entry, byte[] value) {
+        final RedisShard shard = redisShards.forKey(key);
+        final long ttlInSeconds = ttlInSeconds(classKey, entry);
+        if (ttlInSeconds > 0) {
+            return shard.getCircuitBreaker().monitor(shard.getTemplate().opsForValue()
+                    .set(key, value, Duration.ofMillis(jitteredTtlInMillis(classKey, ttlInSeconds))));
+        }
+        return shard.getCircuitBreaker().monitor(shard.getTemplate().opsForValue().set(key, value));
+    }
+
     @Override
-    public <T, ID> Mono<Boolean> saveMany(@NonNull Map<ID, T> idValueMap) {
-        if (idValueMap.isEmpty()) {
+    public <T, ID> Mono<Boolean> saveManyEntries(@NonNull Map<ID, CacheEntry<T>> idEntryMap) {
+        if (idEntryMap.isEmpty()) {
             return Mono.empty();
         }
-        final ClassKey classKey = getClassKey(idValueMap.values().stream().findAny().get().getClass());
+        final int expected = idEntryMap.size();
+        return saveManyEntriesWithCount(idEntryMap)
+                .map(written -> {
+                    if (written != expected) {
+                        log.warn("Only {} of {} entries were written to redis.", written, expected);
+                    }
+                    return written == expected;
+                });
+    }
+
+    /**
+     * Writes all entries and returns how many keys were actually written. Entries with a TTL are
+     * sent as one script call per chunk of {@code writeChunkSize} keys instead of one SET per key,
+     * each key with its own jittered TTL so a batch does not expire all at once. Absent entries
+     * always expire after the negative TTL. Types stored as hashes are written per hash shard
+     * instead. Keys are grouped by {@link RedisShards node} and, in a cluster, by
+     * {@link SlotRouter slot} before they are chunked.
+     */
+    public <T, ID> Mono<Long> saveManyEntriesWithCount(@NonNull Map<ID, CacheEntry<T>> idEntryMap) {
+        if (idEntryMap.isEmpty()) {
+            return Mono.just(0L);
+        }
+        final ClassKey classKey = getClassKey(idEntryMap.values().stream().findAny().get().getType());
         checkMultipleAllowed(classKey, true);
+        if (redisHashStore.isEnabled(classKey)) {
+            final List<RedisHashStore.Write> writes = new ArrayList<>(idEntryMap.size());
+            idEntryMap.forEach((id, entry) -> {
+                try {
+                    writes.add(new RedisHashStore.Write(idKeyExtractor.extractKey(id), serializeData(classKey, entry)));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            return redisCircuitBreaker.monitorBulk(redisHashStore.putAll(classKey, writes, false))
+                    .onErrorResume(this::handleError)
+                    .defaultIfEmpty(0L);
+        }
         final long ttlInSeconds = classKey.getTtlInSeconds(cacheDetailsConfig);
-        final Map<String, String> keyValueMap = idValueMap.entrySet()
-                .stream()
-                .collect(Collectors.toMap(
-                        entry -> classKey.generateKey(idKeyExtractor.extractKey(entry.getKey())),
-                        entry -> {
-                            try {
-                                return serializeDataToJson(entry.getValue());
-                            } catch (JsonProcessingException e) {
-                                throw new RuntimeException(e);
-                            }
+        final Map<String, byte[]> keyValueMap = new HashMap<>();
+        final Map<String, Long> keyTtlMap = new HashMap<>();
+        idEntryMap.forEach((id, entry) -> {
+            final String key = cacheKeyResolver.keyOf(classKey, id);
+            try {
+                keyValueMap.put(key, serializeData(classKey, entry));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            keyTtlMap.put(key, ttlInSeconds(classKey, entry));
+        });
+        final boolean withTtl = ttlInSeconds > 0 || idEntryMap.values().stream().anyMatch(CacheEntry::isAbsent);
+        return Flux.fromIterable(redisShards.partition(keyValueMap).entrySet())
+                .flatMap(shard -> saveMany(classKey, shard.getKey(), shard.getValue(), keyTtlMap, withTtl))
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> saveMany(ClassKey classKey, RedisShard shard, Map<String, byte[]> keyValueMap,
+                                Map<String, Long> keyTtlMap, boolean withTtl) {
+        if (withTtl) {
+            return Flux.fromIterable(slotRouter.partition(keyValueMap))
+                    .flatMapIterable(slot -> Iterables.partition(slot.entrySet(), classKey.getWriteChunkSize(cacheDetailsConfig)))
+                    .flatMap(chunk -> {
+                        final List<String> keys = new ArrayList<>(chunk.size());
+                        final List<byte[]> args = new ArrayList<>(chunk.size() * 2);
+                        for (Map.Entry<String, byte[]> entry : chunk) {
+                            final long entryTtlInSeconds = keyTtlMap.get(entry.getKey());
+                            keys.add(entry.getKey());
+                            args.add(entry.getValue());
+                            args.add(String.valueOf(entryTtlInSeconds > 0 ? jitteredTtlInMillis(classKey, entryTtlInSeconds) : 0)
+                                    .getBytes(StandardCharsets.UTF_8));
                         }
-                ));
-        if (ttlInSeconds > 0) {
-            return Flux.fromIterable(keyValueMap.entrySet())
-                    .flatMap(entry -> reactiveStringRedisTemplate.opsForValue().set(
-                            entry.getKey(), entry.getValue(), Duration.ofSeconds(ttlInSeconds)))
-                    .reduce((a, b) -> a || b);
+                        return shard.getCircuitBreaker().monitorBulk(
+                                        shard.getTemplate().execute(SET_MANY_WITH_TTL, keys, args).next())
+                                .onErrorResume(this::handleError)
+                                .defaultIfEmpty(0L);
+                    })
+                    .reduce(0L, Long::sum);
         } else {
-            return reactiveStringRedisTemplate.opsForValue().multiSet(keyValueMap)
-                    .onErrorResume(this::handleError);
+            return Flux.fromIterable(slotRouter.partition(keyValueMap))
+                    .flatMap(slot -> shard.getCircuitBreaker().monitorBulk(shard.getTemplate().opsForValue().multiSet(slot))
+                            .map(set -> set ? (long) slot.size() : 0L)
+                            .onErrorResume(this::handleError)
+                            .defaultIfEmpty(0L))
+                    .reduce(0L, Long::sum);
         }
     }
 
+    /**
+     * Writes entries keyed by their full cache key, keeping whichever of the stored and the given
+     * value was written last. Each key expires what remains of its TTL since it was written, and
+     * entries that have already outlived it are skipped. Unlike the other write methods errors are
+     * propagated so callers can retry, and the keys of entries that cannot be encoded are passed to
+     * {@code onEncodingFailure}.
+     */
+    public Mono<Long> replayEntries(@NonNull ClassKey classKey, @NonNull Map<String, CacheEntry<?>> keyEntryMap,
+                                    @NonNull Consumer<String> onEncodingFailure) {
+        final long now = System.currentTimeMillis();
+        final Map<String, CacheEntry<?>> live = new HashMap<>();
+        keyEntryMap.forEach((key, entry) -> {
+            final long ttlInSeconds = ttlInSeconds(classKey, entry);
+            if (ttlInSeconds <= 0 || !entry.isOlderThan(TimeUnit.SECONDS.toMillis(ttlInSeconds), now)) {
+                live.put(key, entry);
+            }
+        });
+        if (redisHashStore.isEnabled(classKey)) {
+            final List<RedisHashStore.Write> writes = new ArrayList<>(live.size());
+            live.forEach((key, entry) -> {
+                try {
+                    writes.add(new RedisHashStore.Write(idKeyOf(classKey, key), serializeData(classKey, entry)));
+                } catch (IOException e) {
+                    onSerializationFailure(classKey, key, e);
+                    onEncodingFailure.accept(key);
+                }
+            });
+            return redisCircuitBreaker.monitorBulk(redisHashStore.putAll(classKey, writes, true));
+        }
+        return Flux.fromIterable(redisShards.partition(live).entrySet())
+                .flatMap(shard -> replay(classKey, shard.getKey(), shard.getValue(), now, onEncodingFailure))
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> replay(ClassKey classKey, RedisShard shard, Map<String, CacheEntry<?>> keyEntryMap, long now,
+                              Consumer<String> onEncodingFailure) {
+        return Flux.fromIterable(slotRouter.partition(keyEntryMap))
+                .flatMapIterable(slot -> Iterables.partition(slot.entrySet(), classKey.getWriteChunkSize(cacheDetailsConfig)))
+                .concatMap(chunk -> {
+                    final List<String> keys = new ArrayList<>(chunk.size());
+                    final List<byte[]> args = new ArrayList<>(chunk.size() * 2);
+                    for (Map.Entry<String, CacheEntry<?>> entry : chunk) {
+                        final long ttlInSeconds = ttlInSeconds(classKey, entry.getValue());
+                        final long ttlInMillis = ttlInSeconds > 0
+                                ? jitteredTtlInMillis(classKey, ttlInSeconds) - (now - entry.getValue().getWrittenAtMillis())
+                                : 0;
+                        try {
+                            args.add(serializeData(classKey, entry.getValue()));
+                        } catch (IOException e) {
+                            onSerializationFailure(classKey, entry.getKey(), e);
+                            onEncodingFailure.accept(entry.getKey());
+                            continue;
+                        }
+                        keys.add(entry.getKey());
+                        args.add(String.valueOf(Math.max(ttlInMillis, ttlInSeconds > 0 ? 1 : 0))
+                                .getBytes(StandardCharsets.UTF_8));
+                    }
+                    return shard.getCircuitBreaker().monitorBulk(
+                            shard.getTemplate().execute(SET_MANY_IF_NEWER, keys, args).next());
+                })
+                .reduce(0L, Long::sum);
+    }
+
+    private long ttlInSeconds(ClassKey classKey, CacheEntry<?> entry) {
+        return entry.isAbsent()
+                ? classKey.getNegativeTtlInSeconds(cacheDetailsConfig)
+                : classKey.getTtlInSeconds(cacheDetailsConfig);
+    }
+
+    // Hash fields are only removed by the next sweep, until then reads treat fields that have
+    // outlived their TTL as missing.
+    private boolean isSweepPending(ClassKey classKey, CacheEntry<?> entry, long now) {
+        if (!redisHashStore.isEnabled(classKey) || entry.getWrittenAtMillis() == CacheEntry.UNKNOWN) {
+            return false;
+        }
+        final long ttlInSeconds = ttlInSeconds(classKey, entry);
+        return ttlInSeconds > 0 && entry.isOlderThan(TimeUnit.SECONDS.toMillis(ttlInSeconds), now);
+    }
+
+    private String idKeyOf(ClassKey classKey, String key) {
+        return key.substring(cacheKeyResolver.getKeyPrefix(classKey).length());
+    }
+
+    // Shortens the TTL by a random amount of up to ttlJitterPercent, never lengthens it.
+    private long jitteredTtlInMillis(ClassKey classKey, long ttlInSeconds) {
+        final long ttlInMillis = TimeUnit.SECONDS.toMillis(ttlInSeconds);
+        final int jitterPercent = classKey.getTtlJitterPercent(cacheDetailsConfig);
+        if (jitterPercent <= 0) {
+            return ttlInMillis;
+        }
+        final long maxJitter = ttlInMillis * Math.min(jitterPercent, 100) / 100;
+        return Math.max(1, ttlInMillis - ThreadLocalRandom.current().nextLong(maxJitter + 1));
+    }
+
     @Override
     public <T, ID> Mono<Boolean> deleteById(Class<T> tClass, ID id) {
         ClassKey classKey = getClassKey(tClass);
         checkMultipleAllowed(classKey, true);
-        return reactiveStringRedisTemplate.opsForValue().delete(
-                        classKey.generateKey(idKeyExtractor.extractKey(id)))
+        final String idKey = idKeyExtractor.extractKey(id);
+        if (redisHashStore.isEnabled(classKey)) {
+            return redisCircuitBreaker.monitor(redisHashStore.delete(classKey, idKey))
+                    .onErrorResume(this::handleError);
+        }
+        final String key = cacheKeyResolver.generateKey(classKey, idKey);
+        final RedisShard shard = redisShards.forKey(key);
+        return shard.getCircuitBreaker().monitor(shard.getTemplate().opsForValue().delete(key))
                 .onErrorResume(this::handleError);
     }
 
+    /**
+     * Deletes the entries of the given IDs with one DEL per shard and slot, or one HDEL per hash
+     * shard, and returns how many were removed.
+     */
+    public <T, ID> Mono<Long> deleteManyById(Class<T> tClass, Collection<ID> ids) {
+        final ClassKey classKey = getClassKey(tClass);
+        checkMultipleAllowed(classKey, true);
+        final Map<String, String> idKeys = new HashMap<>();
+        for (ID id : ids) {
+            if (id != null) {
+                final String idKey = idKeyExtractor.extractKey(id);
+                idKeys.put(cacheKeyResolver.generateKey(classKey, idKey), idKey);
+            }
+        }
+        if (idKeys.isEmpty()) {
+            return Mono.just(0L);
+        }
+        if (redisHashStore.isEnabled(classKey)) {
+            return redisCircuitBreaker.monitorBulk(redisHashStore.deleteMany(classKey, idKeys.values()))
+                    .onErrorResume(this::handleError)
+                    .defaultIfEmpty(0L);
+        }
+        return Flux.fromIterable(redisShards.partition(idKeys).entrySet())
+                .flatMap(shard -> shard.getKey().getCircuitBreaker()
+                        .monitorBulk(slotRouter.delete(shard.getKey().getTemplate(), new ArrayList<>(shard.getValue().keySet())))
+                        .onErrorResume(this::handleError))
+                .reduce(0L, Long::sum);
+    }
+
     @Override
     public <T> Mono<Boolean> delete(Class<T> tClass) {
         ClassKey classKey = getClassKey(tClass);
         checkMultipleAllowed(classKey, false);
-        return reactiveStringRedisTemplate.opsForValue().delete(classKey.getKey())
+        final RedisShard shard = redisShards.forKey(classKey.generateKey());
+        return shard.getCircuitBreaker().monitor(shard.getTemplate().opsForValue().delete(classKey.generateKey()))
                 .onErrorResume(this::handleError);
     }
 
@@ -190,31 +489,65 @@ public class ReactiveRedisRepository implements ReactiveCrudRepository {
     }
 
     public Mono<Long> deleteAllByKeyName(String keyName) {
-        ClassKey classKey = Arrays.stream(ClassKey.values())
-                .filter(ck -> ck.name().equals(keyName))
-                .findFirst()
+        ClassKey classKey = ClassKey.fromKey(keyName)
                 .orElseThrow(() -> new RuntimeException("Invalid key provided."));
 
+        if (redisHashStore.isEnabled(classKey)) {
+            return redisHashStore.deleteAll(classKey);
+        }
         if (classKey.isMultipleItems()) {
-            return reactiveStringRedisTemplate.scan(
-                            ScanOptions.scanOptions()
-                                    .match(classKey.getKey() + CacheConfig.KEY_DELIMITER + "*")
-                                    .build())
-                    .buffer(100)
-                    .flatMap(keyList ->
-                            reactiveStringRedisTemplate.delete(keyList.toArray(String[]::new)))
+            // In a cluster Lettuce runs the SCAN against every master in turn.
+            return Flux.fromIterable(redisShards.getShards())
+                    .flatMap(shard -> shard.getTemplate().scan(
+                                    ScanOptions.scanOptions()
+                                            .match(cacheKeyResolver.getKeyPrefix(classKey) + "*")
+                                            .build())
+                            .buffer(100)
+                            .flatMap(keys -> slotRouter.delete(shard.getTemplate(), keys)))
                     .reduce(Long::sum);
         } else {
-            return reactiveStringRedisTemplate.delete(classKey.getKey());
+            return redisShards.forKey(classKey.generateKey()).getTemplate().delete(classKey.generateKey());
         }
     }
 
-    private <T> String serializeDataToJson(T obj) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(obj);
+    private byte[] serializeData(ClassKey classKey, CacheEntry<?> entry) throws IOException {
+        final byte[] data = valueCodecs.encode(classKey, entry);
+        cacheMetrics.recordPayloadWrite(classKey, data.length);
+        return data;
+    }
+
+    private void onSerializationFailure(ClassKey classKey, String key, IOException e) {
+        cacheMetrics.recordSerializationFailure(classKey);
+        log.warn("Failed to serialize {}, not writing it: {}", key, e.getMessage());
+    }
+
+    // Values that can no longer be decoded, for instance after an incompatible model change, are
+    // deleted so the next read reloads them.
+    private void onDeserializationFailure(ClassKey classKey, String key, IOException e) {
+        cacheMetrics.recordDeserializationFailure(classKey);
+        log.warn("Failed to deserialize {}, deleting it: {}", key, e.getMessage());
+        if (redisHashStore.isEnabled(classKey)) {
+            redisHashStore.delete(classKey, idKeyOf(classKey, key))
+                    .toFuture();
+            return;
+        }
+        redisShards.forKey(key).getTemplate().opsForValue().delete(key)
+                .toFuture();
+    }
+
+    // Values read through the connection arrive as buffers, usually wrapping an array of their own.
+    private static byte[] toBytes(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
     }
 
-    private <T> T deserializeDataFromJson(String value, Class<T> tClass) throws JsonProcessingException {
-        return objectMapper.readValue(value, tClass);
+    private <T> CacheEntry<T> deserializeData(ClassKey classKey, byte[] value, Class<T> tClass) throws IOException {
+        return valueCodecs.decodeEntry(classKey, value, tClass);
     }
 
     private ClassKey getClassKey(Class<?> type) {
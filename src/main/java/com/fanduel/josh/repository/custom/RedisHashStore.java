@@ -0,0 +1,342 @@
+package com.fanduel.josh.repository.custom;
+
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import com.fanduel.josh.cache.HashStorageConfig;
+import com.fanduel.josh.cache.RedisCircuitBreaker;
+import com.fanduel.josh.cache.RedisShards;
+import com.fanduel.josh.cache.metrics.CacheMetrics;
+import com.google.common.collect.Iterables;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Redis layout for types with {@code storageMode: hash}. Instead of one key per entry, the entries
+ * of a type are fields of hashes, keyed by their ID key and spread over the shards by its hash
+ * code. Redis only stores a hash compactly while it has at most {@code hash-max-listpack-entries}
+ * fields (and values up to {@code hash-max-listpack-value} bytes), so a type gets enough shards for
+ * {@code expectedEntries} to stay under {@code maxFieldsPerHash} per shard. The field counts seen by
+ * the sweep are published as {@code cache.hash.fields} and a warning is logged once per type when
+ * a shard outgrows the limit.
+ * <p>
+ * Hash fields cannot expire, so {@link #sweepExpired()} walks each shard with HSCAN and removes the
+ * fields whose value was written longer ago than the type's TTL, read from the written-at time in
+ * the value header. No per-field index is kept, a shard is one key.
+ * <p>
+ * Commands are returned as is, callers monitor them with the {@link RedisCircuitBreaker}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisHashStore {
+
+    private static final RedisScript<Long> HSET_MANY =
+            RedisScript.of(new ClassPathResource("scripts/hset_many.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> HDEL_EXPIRED =
+            RedisScript.of(new ClassPathResource("scripts/hdel_expired.lua"), List.class);
+    private static final String SCAN_START = "0";
+    private static final byte[] ALWAYS = "0".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] IF_NEWER = "1".getBytes(StandardCharsets.UTF_8);
+
+    private final ReactiveRedisTemplate<String, byte[]> reactiveBinaryRedisTemplate;
+    private final CacheDetailsConfig cacheDetailsConfig;
+    private final HashStorageConfig hashStorageConfig;
+    private final RedisCircuitBreaker redisCircuitBreaker;
+    private final SlotRouter slotRouter;
+    private final RedisShards redisShards;
+    private final CacheMetrics cacheMetrics;
+
+    private final Map<ClassKey, Shards> shardsByClassKey = new EnumMap<>(ClassKey.class);
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    @PostConstruct
+    protected void init() {
+        for (ClassKey classKey : ClassKey.values()) {
+            if (classKey.getStorageMode(cacheDetailsConfig) == StorageMode.HASH) {
+                if (redisShards.isSharded()) {
+                    throw new IllegalStateException("storageMode hash configured for " + classKey.getKey()
+                            + " is not supported together with cache.sharding.nodes.");
+                }
+                final int count = classKey.getHashShards(cacheDetailsConfig, hashStorageConfig.getMaxFieldsPerHash());
+                log.info("Storing {} in {} hash shards.", classKey.getKey(), count);
+                shardsByClassKey.put(classKey, new Shards(classKey, count,
+                        classKey.isReplicaReadsEnabled(cacheDetailsConfig)
+                                ? redisShards.getShards().get(0).getReadTemplate()
+                                : reactiveBinaryRedisTemplate));
+            }
+        }
+    }
+
+    public boolean isEnabled(ClassKey classKey) {
+        return shardsByClassKey.containsKey(classKey);
+    }
+
+    public Mono<ByteBuffer> get(ClassKey classKey, String field) {
+        final Shards shards = shardsByClassKey.get(classKey);
+        final ByteBuffer hashKey = shards.hashKeyBuffer(shards.of(field));
+        return shards.getReadTemplate()
+                .execute(connection -> connection.hashCommands().hGet(hashKey, encode(field)))
+                .next();
+    }
+
+    /**
+     * Values of the given fields in the same order, {@code null} for fields that are not set. One
+     * HMGET is sent per shard the fields fall into.
+     */
+    public Mono<List<ByteBuffer>> getAll(ClassKey classKey, List<String> fields) {
+        final Shards shards = shardsByClassKey.get(classKey);
+        final Map<Integer, List<Integer>> indexesByShard = new HashMap<>();
+        for (int index = 0; index < fields.size(); index++) {
+            indexesByShard.computeIfAbsent(shards.of(fields.get(index)), shard -> new ArrayList<>()).add(index);
+        }
+        final ByteBuffer[] values = new ByteBuffer[fields.size()];
+        return Flux.fromIterable(indexesByShard.entrySet())
+                .flatMap(shard -> {
+                    final List<Integer> indexes = shard.getValue();
+                    final List<ByteBuffer> shardFields = new ArrayList<>(indexes.size());
+                    for (int index : indexes) {
+                        shardFields.add(encode(fields.get(index)));
+                    }
+                    final ByteBuffer hashKey = shards.hashKeyBuffer(shard.getKey());
+                    return shards.getReadTemplate()
+                            .execute(connection -> connection.hashCommands().hMGet(hashKey, shardFields))
+                            .next()
+                            .doOnNext(shardValues -> {
+                                for (int i = 0; i < shardValues.size(); i++) {
+                                    values[indexes.get(i)] = shardValues.get(i);
+                                }
+                            });
+                })
+                .then(Mono.fromSupplier(() -> Arrays.asList(values)));
+    }
+
+    /**
+     * Writes the given fields and returns how many were written, with one script call per shard
+     * and chunk of {@code writeChunkSize} fields. With {@code ifNewer} fields already holding a
+     * value written at the same time or later are kept.
+     */
+    public Mono<Long> putAll(ClassKey classKey, Collection<Write> writes, boolean ifNewer) {
+        final Shards shards = shardsByClassKey.get(classKey);
+        final Map<Integer, List<Write>> writesByShard = new HashMap<>();
+        for (Write write : writes) {
+            writesByShard.computeIfAbsent(shards.of(write.getField()), shard -> new ArrayList<>()).add(write);
+        }
+        final int chunkSize = classKey.getWriteChunkSize(cacheDetailsConfig);
+        return Flux.fromIterable(writesByShard.entrySet())
+                .flatMap(shard -> Flux.fromIterable(Iterables.partition(shard.getValue(), chunkSize))
+                        .concatMap(chunk -> {
+                            final List<byte[]> args = new ArrayList<>(chunk.size() * 2 + 1);
+                            args.add(ifNewer ? IF_NEWER : ALWAYS);
+                            for (Write write : chunk) {
+                                args.add(write.getField().getBytes(StandardCharsets.UTF_8));
+                                args.add(write.getValue());
+                            }
+                            return reactiveBinaryRedisTemplate
+                                    .execute(HSET_MANY, shards.keys(shard.getKey()), args)
+                                    .next();
+                        }))
+                .reduce(0L, Long::sum);
+    }
+
+    public Mono<Boolean> delete(ClassKey classKey, String field) {
+        final Shards shards = shardsByClassKey.get(classKey);
+        final ByteBuffer hashKey = shards.hashKeyBuffer(shards.of(field));
+        return reactiveBinaryRedisTemplate
+                .execute(connection -> connection.hashCommands().hDel(hashKey, encode(field)))
+                .next();
+    }
+
+    /**
+     * Deletes the given fields with one HDEL per shard they fall into, returning how many were
+     * removed.
+     */
+    public Mono<Long> deleteMany(ClassKey classKey, Collection<String> fields) {
+        final Shards shards = shardsByClassKey.get(classKey);
+        final Map<Integer, List<ByteBuffer>> fieldsByShard = new HashMap<>();
+        for (String field : fields) {
+            fieldsByShard.computeIfAbsent(shards.of(field), shard -> new ArrayList<>()).add(encode(field));
+        }
+        return Flux.fromIterable(fieldsByShard.entrySet())
+                .flatMap(shard -> {
+                    final ByteBuffer hashKey = shards.hashKeyBuffer(shard.getKey());
+                    return reactiveBinaryRedisTemplate
+                            .execute(connection -> connection.hashCommands().hDel(hashKey, shard.getValue()))
+                            .next();
+                })
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * Drops every entry of the type with a single UNLINK of all its shards, one per shard in a
+     * cluster, returning how many Redis keys were removed.
+     */
+    public Mono<Long> deleteAll(ClassKey classKey) {
+        final Shards shards = shardsByClassKey.get(classKey);
+        if (slotRouter.isClustered()) {
+            return Flux.range(0, shards.count())
+                    .flatMap(shard -> unlink(List.of(shards.hashKeyBuffer(shard))))
+                    .reduce(0L, Long::sum);
+        }
+        return unlink(shards.allKeyBuffers());
+    }
+
+    /**
+     * Advances the HSCAN of every shard by {@code sweepBatchSize} fields, removing the expired ones.
+     * A full pass over a shard takes {@code fields / sweepBatchSize} sweeps, reads treat expired
+     * fields as missing until then.
+     */
+    @Scheduled(fixedRateString = "${cache.hashStorage.sweepIntervalMillis:1000}")
+    public void sweepExpired() {
+        if (shardsByClassKey.isEmpty() || !redisCircuitBreaker.isClosed() || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        Flux.fromIterable(shardsByClassKey.values())
+                .flatMap(shards -> Flux.range(0, shards.count())
+                        .concatMap(shard -> sweep(shards, shard, now))
+                        .reduce(0L, Long::sum)
+                        .doOnNext(removed -> {
+                            if (removed > 0) {
+                                log.debug("Removed {} expired {} entries.", removed, shards.getClassKey().getKey());
+                            }
+                        }))
+                .doFinally(signal -> sweeping.set(false))
+                .subscribe(null, e -> log.debug("Sweeping expired hash entries failed: {}", e.getMessage()));
+    }
+
+    private Mono<Long> sweep(Shards shards, int shard, long now) {
+        final ClassKey classKey = shards.getClassKey();
+        final List<byte[]> args = List.of(
+                shards.cursor(shard).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(hashStorageConfig.getSweepBatchSize()).getBytes(StandardCharsets.UTF_8),
+                cutoff(classKey.getTtlInSeconds(cacheDetailsConfig), now),
+                cutoff(classKey.getNegativeTtlInSeconds(cacheDetailsConfig), now));
+        return redisCircuitBreaker.monitorBulk(reactiveBinaryRedisTemplate
+                        .execute(HDEL_EXPIRED, shards.keys(shard), args)
+                        .next())
+                .map(result -> {
+                    shards.setCursor(shard, new String((byte[]) result.get(0), StandardCharsets.UTF_8));
+                    final long fields = (Long) result.get(2);
+                    cacheMetrics.recordHashFields(classKey, fields);
+                    if (fields > hashStorageConfig.getMaxFieldsPerHash() && shards.warnOversized()) {
+                        log.warn("Hash shard {} of {} holds {} fields, more than maxFieldsPerHash {}, so Redis no "
+                                        + "longer stores it compactly. Raise expectedEntries or hashShards.",
+                                shard, classKey.getKey(), fields, hashStorageConfig.getMaxFieldsPerHash());
+                    }
+                    return (Long) result.get(1);
+                });
+    }
+
+    // Fields written before the returned time have outlived the TTL, 0 keeps every field.
+    private static byte[] cutoff(long ttlInSeconds, long now) {
+        final long cutoff = ttlInSeconds > 0 ? now - TimeUnit.SECONDS.toMillis(ttlInSeconds) : 0;
+        return String.valueOf(cutoff).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Mono<Long> unlink(List<ByteBuffer> keys) {
+        return reactiveBinaryRedisTemplate
+                .execute(connection -> connection.keyCommands().mUnlink(keys))
+                .next();
+    }
+
+    private static ByteBuffer encode(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Value
+    public static class Write {
+        String field;
+        byte[] value;
+    }
+
+    private static class Shards {
+
+        private final ClassKey classKey;
+        private final ReactiveRedisTemplate<String, byte[]> readTemplate;
+        private final List<List<String>> keys;
+        private final ByteBuffer[] hashKeyBuffers;
+        private final String[] cursors;
+        private final AtomicBoolean oversizedWarned = new AtomicBoolean();
+
+        Shards(ClassKey classKey, int count, ReactiveRedisTemplate<String, byte[]> readTemplate) {
+            this.classKey = classKey;
+            this.readTemplate = readTemplate;
+            this.keys = new ArrayList<>(count);
+            this.hashKeyBuffers = new ByteBuffer[count];
+            this.cursors = new String[count];
+            for (int shard = 0; shard < count; shard++) {
+                final String hashKey = "{" + classKey.getKey() + ":" + shard + "}";
+                keys.add(List.of(hashKey));
+                hashKeyBuffers[shard] = encode(hashKey);
+                cursors[shard] = SCAN_START;
+            }
+        }
+
+        ClassKey getClassKey() {
+            return classKey;
+        }
+
+        ReactiveRedisTemplate<String, byte[]> getReadTemplate() {
+            return readTemplate;
+        }
+
+        int count() {
+            return hashKeyBuffers.length;
+        }
+
+        // String.hashCode is specified, so every node picks the same shard for a field.
+        int of(String field) {
+            return Math.floorMod(field.hashCode(), hashKeyBuffers.length);
+        }
+
+        List<String> keys(int shard) {
+            return keys.get(shard);
+        }
+
+        ByteBuffer hashKeyBuffer(int shard) {
+            return hashKeyBuffers[shard].duplicate();
+        }
+
+        List<ByteBuffer> allKeyBuffers() {
+            final List<ByteBuffer> all = new ArrayList<>(hashKeyBuffers.length);
+            for (int shard = 0; shard < hashKeyBuffers.length; shard++) {
+                all.add(hashKeyBuffer(shard));
+            }
+            return all;
+        }
+
+        // Only touched by the sweep, which never runs twice at once.
+        String cursor(int shard) {
+            return cursors[shard];
+        }
+
+        void setCursor(int shard, String cursor) {
+            cursors[shard] = cursor;
+        }
+
+        boolean warnOversized() {
+            return oversizedWarned.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.fanduel.josh.repository.custom;
+
+import io.lettuce.core.cluster.SlotHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveRedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Splits multi-key commands by Redis Cluster hash slot. A cluster rejects multi-key commands and
+ * scripts whose keys hash to different slots, so batches are grouped per slot and the groups are
+ * sent in parallel, each one routed by Lettuce to the node serving its slot. Outside of a cluster
+ * every batch is a single group and nothing is split.
+ * <p>
+ * Types with {@link ClassKey#isHashTagEnabled hash tags} keep all their keys in one slot, so their
+ * batches are never split either.
+ * <p>
+ * Redis rejects cross-slot MGET and DEL even when one node owns every slot involved, so a batch
+ * without hash tags still costs one command per slot. Those commands are grouped by the master
+ * owning their slot, from a topology refreshed every {@value #TOPOLOGY_REFRESH_MILLIS} ms, and at
+ * most {@code cache.cluster.nodeConcurrency} of them are in flight per node. Until the topology
+ * is known the whole batch counts as a single node.
+ */
+@Slf4j
+@Component
+public class SlotRouter {
+
+    private static final long TOPOLOGY_REFRESH_MILLIS = 30_000;
+    private static final int UNKNOWN_NODE = -1;
+
+    private final boolean clustered;
+    private final int nodeConcurrency;
+    private final AtomicBoolean refreshingTopology = new AtomicBoolean();
+    private volatile int[] nodeBySlot;
+    private volatile long topologyRefreshedAt;
+
+    public SlotRouter(@Value("${spring.redis.cluster.nodes:}") String clusterNodes,
+                      @Value("${cache.cluster.nodeConcurrency:4}") int nodeConcurrency) {
+        this.clustered = !clusterNodes.isBlank();
+        this.nodeConcurrency = Math.max(1, nodeConcurrency);
+    }
+
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    /**
+     * Values of the given keys in the same order, {@code null} for keys that are not set. One MGET
+     * is sent per slot, grouped by node.
+     */
+    public Mono<List<ByteBuffer>> mGet(ReactiveRedisTemplate<String, byte[]> template, List<ByteBuffer> keys) {
+        if (!clustered) {
+            return mGetSlot(template, keys);
+        }
+        final Map<Integer, List<Integer>> indexesBySlot = new HashMap<>();
+        for (int index = 0; index < keys.size(); index++) {
+            indexesBySlot.computeIfAbsent(SlotHash.getSlot(keys.get(index).duplicate()), slot -> new ArrayList<>())
+                    .add(index);
+        }
+        if (indexesBySlot.size() == 1) {
+            return mGetSlot(template, keys);
+        }
+        final ByteBuffer[] values = new ByteBuffer[keys.size()];
+        return perNode(template, indexesBySlot, indexes -> {
+                    final List<ByteBuffer> slotKeys = new ArrayList<>(indexes.size());
+                    for (int index : indexes) {
+                        slotKeys.add(keys.get(index));
+                    }
+                    return mGetSlot(template, slotKeys)
+                            .doOnNext(slotValues -> {
+                                for (int i = 0; i < slotValues.size(); i++) {
+                                    values[indexes.get(i)] = slotValues.get(i);
+                                }
+                            });
+                })
+                .then(Mono.fromSupplier(() -> Arrays.asList(values)));
+    }
+
+    /**
+     * The given map split into one map per slot, or the map itself outside of a cluster.
+     */
+    public <V> Collection<Map<String, V>> partition(Map<String, V> keyValueMap) {
+        if (!clustered) {
+            return List.of(keyValueMap);
+        }
+        final Map<Integer, Map<String, V>> bySlot = new HashMap<>();
+        keyValueMap.forEach((key, value) -> bySlot
+                .computeIfAbsent(slotOf(key), slot -> new LinkedHashMap<>())
+                .put(key, value));
+        return bySlot.values();
+    }
+
+    /**
+     * Deletes the given keys with one DEL per slot, grouped by node, and returns how many were
+     * removed.
+     */
+    public Mono<Long> delete(ReactiveRedisTemplate<String, byte[]> template, List<String> keys) {
+        if (!clustered) {
+            return template.delete(keys.toArray(String[]::new));
+        }
+        final Map<Integer, List<String>> bySlot = new HashMap<>();
+        for (String key : keys) {
+            bySlot.computeIfAbsent(slotOf(key), slot -> new ArrayList<>()).add(key);
+        }
+        return perNode(template, bySlot, slotKeys -> template.delete(slotKeys.toArray(String[]::new)))
+                .reduce(0L, Long::sum);
+    }
+
+    // Nodes are worked on in parallel, the slots of each node nodeConcurrency at a time.
+    private <T, R> Flux<R> perNode(ReactiveRedisTemplate<String, byte[]> template, Map<Integer, T> bySlot,
+                                   Function<T, Mono<R>> command) {
+        refreshTopology(template);
+        final int[] nodes = nodeBySlot;
+        final Map<Integer, List<T>> byNode = new HashMap<>();
+        bySlot.forEach((slot, group) -> byNode
+                .computeIfAbsent(nodes != null ? nodes[slot] : UNKNOWN_NODE, node -> new ArrayList<>())
+                .add(group));
+        return Flux.fromIterable(byNode.values())
+                .flatMap(groups -> Flux.fromIterable(groups).flatMap(command, nodeConcurrency), Math.max(1, byNode.size()));
+    }
+
+    private void refreshTopology(ReactiveRedisTemplate<String, byte[]> template) {
+        if (System.currentTimeMillis() - topologyRefreshedAt < TOPOLOGY_REFRESH_MILLIS
+                || !refreshingTopology.compareAndSet(false, true)) {
+            return;
+        }
+        template.execute(connection -> ((ReactiveRedisClusterConnection) connection).clusterGetNodes())
+                .filter(RedisClusterNode::isMaster)
+                .collectList()
+                .doFinally(signal -> {
+                    // Failed loads are retried on the same schedule, not on every batch.
+                    topologyRefreshedAt = System.currentTimeMillis();
+                    refreshingTopology.set(false);
+                })
+                .subscribe(masters -> {
+                    final int[] nodes = new int[SlotHash.SLOT_COUNT];
+                    Arrays.fill(nodes, UNKNOWN_NODE);
+                    for (int node = 0; node < masters.size(); node++) {
+                        for (int slot : masters.get(node).getSlotRange().getSlots()) {
+                            nodes[slot] = node;
+                        }
+                    }
+                    nodeBySlot = nodes;
+                }, e -> log.debug("Loading the cluster topology failed: {}", e.getMessage()));
+    }
+
+    private static Mono<List<ByteBuffer>> mGetSlot(ReactiveRedisTemplate<String, byte[]> template, List<ByteBuffer> keys) {
+        return template
+                .execute(connection -> connection.stringCommands().mGet(keys))
+                .next();
+    }
+
+    private static int slotOf(String key) {
+        return SlotHash.getSlot(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,22 @@
+package com.fanduel.josh.repository.custom;
+
+/**
+ * How {@link ReactiveRedisRepository} lays out the entries of a type in Redis.
+ */
+public enum StorageMode {
+
+    /**
+     * One Redis string per entry.
+     */
+    STRING,
+
+    /**
+     * Entries are fields of a fixed number of Redis hashes per type, see {@link RedisHashStore}.
+     * Only applies to types with multiple items.
+     */
+    HASH;
+
+    public static StorageMode fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,57 @@
+package com.fanduel.josh.repository.custom.codec;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.dataformat.avro.AvroMapper;
+import com.fasterxml.jackson.dataformat.avro.AvroSchema;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Schema-aware binary format: the schema is derived from the class, so only field values are
+ * written. Both sides must agree on the class shape, an incompatible change surfaces as a decode
+ * failure which the repository already treats as a miss.
+ */
+@Component
+public class AvroValueCodec implements ValueCodec {
+
+    public static final byte FORMAT_ID = 3;
+    public static final String NAME = "avro";
+
+    private final AvroMapper avroMapper = new AvroMapper();
+    private final Map<Class<?>, AvroSchema> schemas = new ConcurrentHashMap<>();
+
+    @Override
+    public byte getFormatId() {
+        return FORMAT_ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Object value, OutputStream out) throws IOException {
+        avroMapper.writer(schemaFor(value.getClass())).writeValue(out, value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> tClass) throws IOException {
+        return avroMapper.readerFor(tClass)
+                .with(schemaFor(tClass))
+                .readValue(data, offset, length);
+    }
+
+    private AvroSchema schemaFor(Class<?> type) throws JsonMappingException {
+        AvroSchema schema = schemas.get(type);
+        if (schema == null) {
+            schema = avroMapper.schemaFor(type);
+            schemas.put(type, schema);
+        }
+        return schema;
+    }
+}
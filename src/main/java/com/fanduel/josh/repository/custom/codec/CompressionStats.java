@@ -0,0 +1,62 @@
+package com.fanduel.josh.repository.custom.codec;
+
+import com.fanduel.josh.repository.custom.ClassKey;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals per {@link ClassKey} for tuning the compression threshold and level.
+ */
+@Component
+public class CompressionStats {
+
+    private final Map<ClassKey, Stats> stats = new EnumMap<>(ClassKey.class);
+
+    public CompressionStats() {
+        for (ClassKey classKey : ClassKey.values()) {
+            stats.put(classKey, new Stats());
+        }
+    }
+
+    public Stats get(ClassKey classKey) {
+        return stats.get(classKey);
+    }
+
+    void recordCompression(ClassKey classKey, int uncompressedBytes, int compressedBytes, long nanos) {
+        Stats classStats = stats.get(classKey);
+        classStats.compressions.increment();
+        classStats.uncompressedBytes.add(uncompressedBytes);
+        classStats.compressedBytes.add(compressedBytes);
+        classStats.compressNanos.add(nanos);
+        if (compressedBytes >= uncompressedBytes) {
+            classStats.ineffective.increment();
+        }
+    }
+
+    void recordDecompression(ClassKey classKey, long nanos) {
+        Stats classStats = stats.get(classKey);
+        classStats.decompressions.increment();
+        classStats.decompressNanos.add(nanos);
+    }
+
+    @Getter
+    public static class Stats {
+        private final LongAdder compressions = new LongAdder();
+        // Values that did not shrink and were therefore stored uncompressed.
+        private final LongAdder ineffective = new LongAdder();
+        private final LongAdder uncompressedBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder compressNanos = new LongAdder();
+        private final LongAdder decompressions = new LongAdder();
+        private final LongAdder decompressNanos = new LongAdder();
+
+        public double getCompressionRatio() {
+            long compressed = compressedBytes.sum();
+            return compressed == 0 ? 1.0 : (double) uncompressedBytes.sum() / compressed;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.fanduel.josh.repository.custom.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+@Component
+public class JsonValueCodec implements ValueCodec {
+
+    public static final byte FORMAT_ID = 1;
+    public static final String NAME = "json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public byte getFormatId() {
+        return FORMAT_ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Object value, OutputStream out) throws IOException {
+        objectMapper.writeValue(out, value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> tClass) throws IOException {
+        return objectMapper.readValue(data, offset, length, tClass);
+    }
+}
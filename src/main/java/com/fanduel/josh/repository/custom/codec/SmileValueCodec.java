@@ -0,0 +1,41 @@
+package com.fanduel.josh.repository.custom.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Binary JSON: same data model as {@link JsonValueCodec} without the text encoding, and with
+ * repeated property names written as back references.
+ */
+@Component
+public class SmileValueCodec implements ValueCodec {
+
+    public static final byte FORMAT_ID = 2;
+    public static final String NAME = "smile";
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+
+    @Override
+    public byte getFormatId() {
+        return FORMAT_ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Object value, OutputStream out) throws IOException {
+        objectMapper.writeValue(out, value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> tClass) throws IOException {
+        return objectMapper.readValue(data, offset, length, tClass);
+    }
+}
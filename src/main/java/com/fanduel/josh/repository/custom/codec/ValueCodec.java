@@ -0,0 +1,20 @@
+package com.fanduel.josh.repository.custom.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serialization format for cached values. Every codec owns a unique one-byte format id that
+ * {@link ValueCodecs} writes in front of each stored value, so readers always know which codec
+ * wrote an entry regardless of which one is currently configured.
+ */
+public interface ValueCodec {
+
+    byte getFormatId();
+
+    String getName();
+
+    void encode(Object value, OutputStream out) throws IOException;
+
+    <T> T decode(byte[] data, int offset, int length, Class<T> tClass) throws IOException;
+}
@@ -0,0 +1,166 @@
+package com.fanduel.josh.repository.custom.codec;
+
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import com.fanduel.josh.repository.custom.CacheEntry;
+import com.fanduel.josh.repository.custom.ClassKey;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Encodes values with the codec configured for their {@link ClassKey} and decodes them with
+ * whichever codec wrote them. Stored values are {@code [header][metadata][payload]} where the low
+ * four bits of the header are the codec's format id and the high bits are flags saying which
+ * metadata fields follow and whether the payload is compressed. Values written before the header
+ * existed are plain JSON objects or arrays and are recognised by their first character.
+ * <p>
+ * {@link CacheEntry#isAbsent() Absent} entries are stored as a header with the tombstone flag and
+ * their write time only, nine bytes regardless of the type.
+ */
+@Component
+public class ValueCodecs {
+
+    private static final int MAX_FORMAT_ID = 0x0F;
+    private static final int FORMAT_ID_MASK = 0x0F;
+    static final int COMPRESSED_FLAG = 0x80;
+    static final int WRITTEN_AT_FLAG = 0x40;
+    static final int LOAD_TIME_FLAG = 0x20;
+    static final int TOMBSTONE_FLAG = 0x10;
+
+    private final ValueCodec[] codecsByFormatId = new ValueCodec[MAX_FORMAT_ID + 1];
+    private final Map<ClassKey, ValueCodec> writeCodecs = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, Integer> compressionThresholds = new EnumMap<>(ClassKey.class);
+    private final Map<ClassKey, Integer> compressionLevels = new EnumMap<>(ClassKey.class);
+    private final JsonValueCodec legacyCodec;
+    private final CompressionStats compressionStats;
+
+    public ValueCodecs(List<ValueCodec> codecs,
+                       JsonValueCodec jsonValueCodec,
+                       CompressionStats compressionStats,
+                       CacheDetailsConfig cacheDetailsConfig) {
+        final Map<String, ValueCodec> codecsByName = new HashMap<>();
+        for (ValueCodec codec : codecs) {
+            int formatId = codec.getFormatId();
+            if (formatId <= 0 || formatId > MAX_FORMAT_ID) {
+                throw new IllegalArgumentException(codec.getName() + " uses format id " + formatId
+                        + " which is outside of 1-" + MAX_FORMAT_ID + ".");
+            }
+            if (codecsByFormatId[formatId] != null || codecsByName.containsKey(codec.getName())) {
+                throw new DuplicateKeyException(codec.getName() + " is already registered in " + getClass().getName());
+            }
+            codecsByFormatId[formatId] = codec;
+            codecsByName.put(codec.getName(), codec);
+        }
+        for (ClassKey classKey : ClassKey.values()) {
+            String name = classKey.getCodec(cacheDetailsConfig);
+            ValueCodec codec = codecsByName.get(name);
+            if (codec == null) {
+                throw new NoSuchElementException("Codec " + name + " configured for " + classKey.getKey()
+                        + " is not registered in " + getClass().getName());
+            }
+            writeCodecs.put(classKey, codec);
+            compressionThresholds.put(classKey, classKey.getCompressionThresholdBytes(cacheDetailsConfig));
+            compressionLevels.put(classKey, classKey.getCompressionLevel(cacheDetailsConfig));
+        }
+        this.legacyCodec = jsonValueCodec;
+        this.compressionStats = compressionStats;
+    }
+
+    public byte[] encode(ClassKey classKey, Object value) throws IOException {
+        return encode(classKey, CacheEntry.of(value));
+    }
+
+    public byte[] encode(ClassKey classKey, CacheEntry<?> entry) throws IOException {
+        ValueCodec codec = writeCodecs.get(classKey);
+        if (entry.isAbsent()) {
+            return ByteBuffer.allocate(1 + Long.BYTES)
+                    .put((byte) (codec.getFormatId() | WRITTEN_AT_FLAG | TOMBSTONE_FLAG))
+                    .putLong(entry.getWrittenAtMillis())
+                    .array();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        boolean hasLoadTime = entry.getLoadMillis() > 0;
+        out.write(codec.getFormatId() | WRITTEN_AT_FLAG | (hasLoadTime ? LOAD_TIME_FLAG : 0));
+        out.write(ByteBuffer.allocate(Long.BYTES).putLong(entry.getWrittenAtMillis()).array(), 0, Long.BYTES);
+        if (hasLoadTime) {
+            int loadMillis = (int) Math.min(entry.getLoadMillis(), Integer.MAX_VALUE);
+            out.write(ByteBuffer.allocate(Integer.BYTES).putInt(loadMillis).array(), 0, Integer.BYTES);
+        }
+        int payloadOffset = out.size();
+        codec.encode(entry.getValue(), out);
+        byte[] encoded = out.toByteArray();
+        int threshold = compressionThresholds.get(classKey);
+        int payloadLength = encoded.length - payloadOffset;
+        if (threshold > 0 && payloadLength >= threshold) {
+            long start = System.nanoTime();
+            byte[] compressed = ValueCompression.compress(encoded, payloadOffset, compressionLevels.get(classKey));
+            compressionStats.recordCompression(
+                    classKey, payloadLength, compressed.length - payloadOffset, System.nanoTime() - start);
+            // Small or high-entropy payloads can grow, in which case the plain value is kept.
+            if (compressed.length < encoded.length) {
+                compressed[0] = (byte) (compressed[0] | COMPRESSED_FLAG);
+                return compressed;
+            }
+        }
+        return encoded;
+    }
+
+    public <T> T decode(ClassKey classKey, byte[] data, Class<T> tClass) throws IOException {
+        return decodeEntry(classKey, data, tClass).getValue();
+    }
+
+    public <T> CacheEntry<T> decodeEntry(ClassKey classKey, byte[] data, Class<T> tClass) throws IOException {
+        if (data.length == 0) {
+            throw new IOException("Cannot decode an empty value.");
+        }
+        if (isLegacy(data[0])) {
+            return CacheEntry.of(legacyCodec.decode(data, 0, data.length, tClass), CacheEntry.UNKNOWN);
+        }
+        int header = data[0] & 0xFF;
+        ValueCodec codec = codecsByFormatId[header & FORMAT_ID_MASK];
+        if (codec == null) {
+            throw new IOException("No codec registered for format id " + (header & FORMAT_ID_MASK) + ".");
+        }
+        int offset = 1;
+        long writtenAtMillis = CacheEntry.UNKNOWN;
+        if ((header & WRITTEN_AT_FLAG) != 0) {
+            checkLength(data, offset + Long.BYTES);
+            writtenAtMillis = ByteBuffer.wrap(data, offset, Long.BYTES).getLong();
+            offset += Long.BYTES;
+        }
+        long loadMillis = CacheEntry.UNKNOWN;
+        if ((header & LOAD_TIME_FLAG) != 0) {
+            checkLength(data, offset + Integer.BYTES);
+            loadMillis = ByteBuffer.wrap(data, offset, Integer.BYTES).getInt();
+            offset += Integer.BYTES;
+        }
+        if ((header & TOMBSTONE_FLAG) != 0) {
+            return CacheEntry.absent(tClass, writtenAtMillis, loadMillis);
+        }
+        if ((header & COMPRESSED_FLAG) != 0) {
+            long start = System.nanoTime();
+            byte[] payload = ValueCompression.decompress(data, offset, data.length - offset);
+            compressionStats.recordDecompression(classKey, System.nanoTime() - start);
+            return CacheEntry.of(codec.decode(payload, 0, payload.length, tClass), writtenAtMillis, loadMillis);
+        }
+        return CacheEntry.of(codec.decode(data, offset, data.length - offset, tClass), writtenAtMillis, loadMillis);
+    }
+
+    private static void checkLength(byte[] data, int required) throws IOException {
+        if (data.length < required) {
+            throw new IOException("Value is truncated.");
+        }
+    }
+
+    private static boolean isLegacy(byte firstByte) {
+        return firstByte == '{' || firstByte == '[';
+    }
+}
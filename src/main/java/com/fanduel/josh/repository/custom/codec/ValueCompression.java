@@ -0,0 +1,83 @@
+package com.fanduel.josh.repository.custom.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate (no zlib/gzip wrapper) for stored values. A compressed value is laid out as
+ * {@code [header][metadata][original length:int][deflated payload]} so the reader can size its
+ * buffer up front.
+ */
+final class ValueCompression {
+
+    static final int LENGTH_BYTES = Integer.BYTES;
+    private static final int BUFFER_SIZE = 4096;
+    // Redis values are at most 512MB, and deflate cannot expand a payload more than 1032 times.
+    private static final int MAX_ORIGINAL_LENGTH = 512 * 1024 * 1024;
+    private static final long MAX_DEFLATE_RATIO = 1032;
+
+    private ValueCompression() {}
+
+    /**
+     * Compresses everything from {@code payloadOffset} on. The bytes before it (header and metadata)
+     * are copied as they are.
+     */
+    static byte[] compress(byte[] data, int payloadOffset, int level) {
+        final int length = data.length - payloadOffset;
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, payloadOffset, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payloadOffset + LENGTH_BYTES + length / 2 + 1);
+            out.write(data, 0, payloadOffset);
+            out.write(ByteBuffer.allocate(LENGTH_BYTES).putInt(length).array(), 0, LENGTH_BYTES);
+            byte[] buffer = new byte[Math.min(BUFFER_SIZE, length + 16)];
+            while (!deflater.finished()) {
+                int written = deflater.deflate(buffer);
+                out.write(buffer, 0, written);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the decompressed payload, without header
+     */
+    static byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        if (length < LENGTH_BYTES) {
+            throw new IOException("Compressed value is truncated.");
+        }
+        int originalLength = ByteBuffer.wrap(data, offset, LENGTH_BYTES).getInt();
+        if (originalLength < 0 || originalLength > MAX_ORIGINAL_LENGTH
+                || originalLength > (length - LENGTH_BYTES) * MAX_DEFLATE_RATIO) {
+            throw new IOException("Compressed value has an invalid original length of " + originalLength + ".");
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, offset + LENGTH_BYTES, length - LENGTH_BYTES);
+            byte[] result = new byte[originalLength];
+            int read = 0;
+            while (read < originalLength && !inflater.finished()) {
+                int inflated = inflater.inflate(result, read, originalLength - read);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += inflated;
+            }
+            if (read != originalLength) {
+                throw new IOException("Compressed value is truncated.");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+-- Scans part of one hash shard and removes the fields that have outlived their TTL, judged by the
+-- written-at time every value carries after its header byte (see hset_many.lua), so no expiry
+-- index is kept next to the hash.
+-- KEYS[1]: the hash.
+-- ARGV[1]: the HSCAN cursor to continue from. ARGV[2]: the HSCAN count.
+-- ARGV[3]: values written before this time in epoch milliseconds are removed, 0 keeps them all.
+-- ARGV[4]: the same for tombstones (header flag 0x10), which have their own TTL.
+-- Values without a written-at time are kept.
+-- Returns the cursor to continue from, '0' once the whole hash was scanned, the number of fields
+-- removed and the number of fields left in the hash.
+local WRITTEN_AT_FLAG = 0x40
+local TOMBSTONE_FLAG = 0x10
+
+local valueCutoff = tonumber(ARGV[3])
+local tombstoneCutoff = tonumber(ARGV[4])
+
+local function isExpired(value)
+    if #value < 9 then
+        return false
+    end
+    local header = string.byte(value, 1)
+    if header == 123 or header == 91 or bit.band(header, WRITTEN_AT_FLAG) == 0 then
+        return false
+    end
+    local writtenAt = 0
+    for i = 2, 9 do
+        writtenAt = writtenAt * 256 + string.byte(value, i)
+    end
+    local cutoff = bit.band(header, TOMBSTONE_FLAG) ~= 0 and tombstoneCutoff or valueCutoff
+    return writtenAt < cutoff
+end
+
+local scan = redis.call('HSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])
+local entries = scan[2]
+local expired = {}
+for i = 1, #entries, 2 do
+    if isExpired(entries[i + 1]) then
+        expired[#expired + 1] = entries[i]
+    end
+end
+if #expired > 0 then
+    redis.call('HDEL', KEYS[1], unpack(expired))
+end
+return {scan[1], #expired, redis.call('HLEN', KEYS[1])}
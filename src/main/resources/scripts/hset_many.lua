@@ -0,0 +1,41 @@
+-- Writes fields of one hash shard.
+-- KEYS[1]: the hash.
+-- ARGV[1]: '1' to keep fields that already hold a value written at the same time or later, as
+--          set_many_if_newer.lua does for string keys, '0' to always write.
+-- ARGV[2..]: field and value for each field, interleaved.
+-- Returns the number of fields that were written.
+local WRITTEN_AT_FLAG = 0x40
+
+-- The written-at time as a number, so it never depends on how the server collates strings.
+local function writtenAt(value)
+    if type(value) ~= 'string' or #value < 9 then
+        return nil
+    end
+    local header = string.byte(value, 1)
+    if header == 123 or header == 91 or bit.band(header, WRITTEN_AT_FLAG) == 0 then
+        return nil
+    end
+    local millis = 0
+    for i = 2, 9 do
+        millis = millis * 256 + string.byte(value, i)
+    end
+    return millis
+end
+
+local ifNewer = ARGV[1] == '1'
+local written = 0
+for i = 2, #ARGV, 2 do
+    local field = ARGV[i]
+    local value = ARGV[i + 1]
+    local write = true
+    if ifNewer then
+        local existing = writtenAt(redis.call('HGET', KEYS[1], field))
+        local incoming = writtenAt(value)
+        write = existing == nil or (incoming ~= nil and incoming > existing)
+    end
+    if write then
+        redis.call('HSET', KEYS[1], field, value)
+        written = written + 1
+    end
+end
+return written
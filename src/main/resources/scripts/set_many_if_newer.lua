@@ -0,0 +1,46 @@
+-- Writes every key unless Redis already holds a value written at the same time or later, so
+-- replaying writes made during an outage never overwrites a fresher value.
+-- KEYS: the keys to write.
+-- ARGV: value and TTL in milliseconds for each key, interleaved (value1, ttl1, value2, ttl2, ...).
+--       A TTL of 0 writes the key without an expiry.
+-- Values start with a header byte which, when flag 0x40 is set, is followed by the written-at time
+-- as an 8-byte big-endian long. Values without one (including legacy JSON starting with '{' or '[')
+-- are always overwritten.
+-- Returns the number of keys that were written.
+local WRITTEN_AT_FLAG = 0x40
+
+-- The written-at time as a number, so it never depends on how the server collates strings.
+local function writtenAt(value)
+    if type(value) ~= 'string' or #value < 9 then
+        return nil
+    end
+    local header = string.byte(value, 1)
+    if header == 123 or header == 91 or bit.band(header, WRITTEN_AT_FLAG) == 0 then
+        return nil
+    end
+    local millis = 0
+    for i = 2, 9 do
+        millis = millis * 256 + string.byte(value, i)
+    end
+    return millis
+end
+
+local written = 0
+for i, key in ipairs(KEYS) do
+    local value = ARGV[i * 2 - 1]
+    local ttl = tonumber(ARGV[i * 2])
+    local existing = writtenAt(redis.pcall('GET', key))
+    local incoming = writtenAt(value)
+    if existing == nil or (incoming ~= nil and incoming > existing) then
+        local result
+        if ttl > 0 then
+            result = redis.pcall('SET', key, value, 'PX', ttl)
+        else
+            result = redis.pcall('SET', key, value)
+        end
+        if type(result) == 'table' and result.ok == 'OK' then
+            written = written + 1
+        end
+    end
+end
+return written
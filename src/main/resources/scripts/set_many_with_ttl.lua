@@ -0,0 +1,19 @@
+-- Writes every key with its own expiry in a single round trip.
+-- KEYS: the keys to write.
+-- ARGV: value and TTL in milliseconds for each key, interleaved (value1, ttl1, value2, ttl2, ...).
+--       A TTL of 0 writes the key without an expiry.
+-- Returns the number of keys that were written.
+local written = 0
+for i, key in ipairs(KEYS) do
+    local ttl = tonumber(ARGV[i * 2])
+    local result
+    if ttl > 0 then
+        result = redis.pcall('SET', key, ARGV[i * 2 - 1], 'PX', ttl)
+    else
+        result = redis.pcall('SET', key, ARGV[i * 2 - 1])
+    end
+    if type(result) == 'table' and result.ok == 'OK' then
+        written = written + 1
+    end
+end
+return written
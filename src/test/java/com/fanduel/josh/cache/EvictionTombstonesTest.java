@@ -0,0 +1,57 @@
+package com.fanduel.josh.cache;
+
+import com.fanduel.josh.repository.custom.ClassKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EvictionTombstonesTest {
+
+    private static final int CAPACITY = 100;
+
+    private EvictionTombstones evictionTombstones;
+
+    @BeforeEach
+    void setUp() {
+        final WriteBehindConfig writeBehindConfig = new WriteBehindConfig();
+        writeBehindConfig.setCapacity(CAPACITY);
+        evictionTombstones = new EvictionTombstones(writeBehindConfig);
+        evictionTombstones.init();
+    }
+
+    @Test
+    void onlyEvictionsAfterTheMarkCount() {
+        evictionTombstones.evict(ClassKey.testObj2, "before");
+        final long mark = evictionTombstones.mark();
+        evictionTombstones.evict(ClassKey.testObj2, "after");
+
+        assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj2, "before", mark)).isFalse();
+        assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj2, "after", mark)).isTrue();
+        assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj2, "other", mark)).isFalse();
+        assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj3, "after", mark)).isFalse();
+    }
+
+    @Test
+    void evictAllCoversEveryKeyOfTheType() {
+        final long mark = evictionTombstones.mark();
+        evictionTombstones.evictAll(ClassKey.testObj2);
+
+        assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj2, "any", mark)).isTrue();
+        assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj2, "any", evictionTombstones.mark())).isFalse();
+        assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj3, "any", mark)).isFalse();
+    }
+
+    @Test
+    void overflowNeverForgetsAnEviction() {
+        final long mark = evictionTombstones.mark();
+        for (int i = 0; i < CAPACITY * 10; i++) {
+            evictionTombstones.evict(ClassKey.testObj2, "key-" + i);
+        }
+
+        for (int i = 0; i < CAPACITY * 10; i++) {
+            assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj2, "key-" + i, mark)).as("key-" + i).isTrue();
+        }
+        assertThat(evictionTombstones.isEvictedSince(ClassKey.testObj3, "key-0", mark)).isFalse();
+    }
+}
@@ -0,0 +1,92 @@
+package com.fanduel.josh.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TwoLevelCacheTest {
+
+    private final ConcurrentMapCache local = new ConcurrentMapCache("local");
+    private final ConcurrentMapCache remote = new ConcurrentMapCache("remote");
+    private final List<String> invalidations = new ArrayList<>();
+    private RedisCircuitBreaker redisCircuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        // Starts half-open, so L2 is skipped until it closes.
+        redisCircuitBreaker = new RedisCircuitBreaker(new RedisHealthConfig());
+    }
+
+    @Test
+    void replaysOutageWritesAndEvictions() {
+        final TwoLevelCache cache = twoLevelCache(100);
+        remote.put("evicted", "old");
+        remote.put("written", "old");
+
+        cache.put("written", "new");
+        cache.evict("evicted");
+        closeBreaker();
+
+        assertThat(remote.get("written").get()).isEqualTo("old");
+        assertThat(cache.replayPending()).isTrue();
+        assertThat(remote.get("written").get()).isEqualTo("new");
+        assertThat(remote.get("evicted")).isNull();
+        assertThat(invalidations).contains("written", "evicted");
+    }
+
+    @Test
+    void replaysAClearBeforeTheKeysWrittenAfterIt() {
+        final TwoLevelCache cache = twoLevelCache(100);
+        remote.put("stale", "old");
+
+        cache.clear();
+        cache.put("written", "new");
+        closeBreaker();
+
+        assertThat(cache.replayPending()).isTrue();
+        assertThat(remote.get("stale")).isNull();
+        assertThat(remote.get("written").get()).isEqualTo("new");
+    }
+
+    @Test
+    void clearsL2WhenTooManyKeysChanged() {
+        final TwoLevelCache cache = twoLevelCache(1);
+        remote.put("stale", "old");
+
+        cache.put("first", "new");
+        cache.put("second", "new");
+        closeBreaker();
+
+        assertThat(cache.replayPending()).isTrue();
+        assertThat(remote.get("stale")).isNull();
+        assertThat(remote.get("first")).isNull();
+    }
+
+    @Test
+    void keepsChangesPendingWhileL2IsSkipped() {
+        final TwoLevelCache cache = twoLevelCache(100);
+
+        cache.put("written", "new");
+
+        assertThat(cache.replayPending()).isFalse();
+        assertThat(remote.get("written")).isNull();
+        closeBreaker();
+        assertThat(cache.replayPending()).isTrue();
+        assertThat(remote.get("written").get()).isEqualTo("new");
+    }
+
+    private TwoLevelCache twoLevelCache(long maxPendingKeys) {
+        return new TwoLevelCache("test", local, remote, redisCircuitBreaker, invalidations::add, maxPendingKeys);
+    }
+
+    private void closeBreaker() {
+        while (!redisCircuitBreaker.isClosed()) {
+            redisCircuitBreaker.onSuccess(0);
+        }
+    }
+}
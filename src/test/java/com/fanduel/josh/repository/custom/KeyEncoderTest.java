@@ -0,0 +1,87 @@
+package com.fanduel.josh.repository.custom;
+
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyEncoderTest {
+
+    private static final List<String> IDS = List.of(
+            "",
+            "plain-ascii-123",
+            "café über",
+            "€中文￿",
+            "pair 😀 and 𐀀􏿿",
+            "lone high \ud83d end",
+            "lone low \ude00 start",
+            "\ud83d",
+            "\ude00\ud83d",
+            "\ud83d😀");
+
+    private final ObjectKeyExtractor objectKeyExtractor = new ObjectKeyExtractor();
+    private final CacheKeyResolver cacheKeyResolver = new CacheKeyResolver(objectKeyExtractor, new CacheDetailsConfig());
+    private final KeyEncoder keyEncoder = new KeyEncoder(objectKeyExtractor, cacheKeyResolver);
+
+    @Test
+    void writeUtf8MatchesGetBytes() {
+        for (String id : IDS) {
+            assertThat(utf8(id)).as(id).isEqualTo(id.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void writeUtf8MatchesGetBytesOnRandomChars() {
+        final SplittableRandom random = new SplittableRandom(42);
+        for (int run = 0; run < 10_000; run++) {
+            final char[] chars = new char[random.nextInt(1, 16)];
+            for (int i = 0; i < chars.length; i++) {
+                // Biased towards surrogates, which is where the encoders could disagree.
+                chars[i] = random.nextBoolean()
+                        ? (char) random.nextInt(Character.MIN_SURROGATE, Character.MAX_SURROGATE + 1)
+                        : (char) random.nextInt(Character.MAX_VALUE + 1);
+            }
+            final String id = new String(chars);
+            assertThat(utf8(id)).as(id).isEqualTo(id.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void encodeKeysMatchesGeneratedKeys() {
+        final List<ByteBuffer> keys = keyEncoder.encodeKeys(ClassKey.testObj2, IDS);
+
+        assertThat(keys).hasSize(IDS.size());
+        for (int i = 0; i < IDS.size(); i++) {
+            final byte[] expected = cacheKeyResolver.generateKey(ClassKey.testObj2, IDS.get(i))
+                    .getBytes(StandardCharsets.UTF_8);
+            assertThat(bytes(keys.get(i))).as(IDS.get(i)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void encodeKeysGrowsTheScratchBuffer() {
+        final String id = "😀".repeat(4096);
+
+        final List<ByteBuffer> keys = keyEncoder.encodeKeys(ClassKey.testObj2, List.of(id, "next"));
+
+        assertThat(KeyEncoder.decodeKey(keys.get(0))).isEqualTo(cacheKeyResolver.generateKey(ClassKey.testObj2, id));
+        assertThat(KeyEncoder.decodeKey(keys.get(1))).isEqualTo(cacheKeyResolver.generateKey(ClassKey.testObj2, "next"));
+    }
+
+    private static byte[] utf8(String value) {
+        final byte[] target = new byte[value.length() * 3];
+        return Arrays.copyOf(target, KeyEncoder.writeUtf8(value, target, 0));
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
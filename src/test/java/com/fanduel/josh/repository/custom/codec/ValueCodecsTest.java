@@ -0,0 +1,117 @@
+package com.fanduel.josh.repository.custom.codec;
+
+import com.fanduel.josh.cache.CacheDetailsConfig;
+import com.fanduel.josh.model.TestObj2;
+import com.fanduel.josh.repository.custom.CacheEntry;
+import com.fanduel.josh.repository.custom.ClassKey;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ValueCodecsTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {JsonValueCodec.NAME, SmileValueCodec.NAME, AvroValueCodec.NAME})
+    void roundTripsEntries(String codec) throws IOException {
+        final ValueCodecs valueCodecs = valueCodecs(codec, 0);
+        final CacheEntry<TestObj2> entry = CacheEntry.of(testObj2("id-1"), 1_600_000_000_000L, 25);
+
+        final CacheEntry<TestObj2> decoded =
+                valueCodecs.decodeEntry(ClassKey.testObj2, valueCodecs.encode(ClassKey.testObj2, entry), TestObj2.class);
+
+        assertThat(decoded).isEqualTo(entry);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {JsonValueCodec.NAME, SmileValueCodec.NAME, AvroValueCodec.NAME})
+    void roundTripsCompressedEntries(String codec) throws IOException {
+        final ValueCodecs valueCodecs = valueCodecs(codec, 1);
+        final CacheEntry<TestObj2> entry = CacheEntry.of(testObj2("x".repeat(1024)), 1_600_000_000_000L);
+
+        final byte[] encoded = valueCodecs.encode(ClassKey.testObj2, entry);
+
+        assertThat(encoded[0] & ValueCodecs.COMPRESSED_FLAG).isNotZero();
+        assertThat(valueCodecs.decodeEntry(ClassKey.testObj2, encoded, TestObj2.class)).isEqualTo(entry);
+    }
+
+    @Test
+    void roundTripsAbsentEntries() throws IOException {
+        final ValueCodecs valueCodecs = valueCodecs(SmileValueCodec.NAME, 0);
+        final CacheEntry<TestObj2> entry = CacheEntry.absent(TestObj2.class, 1_600_000_000_000L, CacheEntry.UNKNOWN);
+
+        final byte[] encoded = valueCodecs.encode(ClassKey.testObj2, entry);
+
+        assertThat(encoded).hasSize(1 + Long.BYTES);
+        assertThat(valueCodecs.decodeEntry(ClassKey.testObj2, encoded, TestObj2.class)).isEqualTo(entry);
+    }
+
+    @Test
+    void decodesLegacyJsonObjects() throws IOException {
+        final TestObj2 value = testObj2("legacy");
+        final byte[] legacy = new ObjectMapper().writeValueAsBytes(value);
+
+        final CacheEntry<TestObj2> decoded =
+                valueCodecs(SmileValueCodec.NAME, 0).decodeEntry(ClassKey.testObj2, legacy, TestObj2.class);
+
+        assertThat(decoded.getValue()).isEqualTo(value);
+        assertThat(decoded.getWrittenAtMillis()).isEqualTo(CacheEntry.UNKNOWN);
+    }
+
+    @Test
+    void decodesLegacyJsonArrays() throws IOException {
+        final byte[] legacy = "[\"a\",\"b\"]".getBytes();
+
+        final List<?> decoded = valueCodecs(AvroValueCodec.NAME, 0).decode(ClassKey.testObj2, legacy, List.class);
+
+        assertThat(decoded).isEqualTo(List.of("a", "b"));
+    }
+
+    @Test
+    void headersNeverLookLikeLegacyJson() throws IOException {
+        for (String codec : List.of(JsonValueCodec.NAME, SmileValueCodec.NAME, AvroValueCodec.NAME)) {
+            for (int threshold : new int[]{0, 1}) {
+                final byte header = valueCodecs(codec, threshold)
+                        .encode(ClassKey.testObj2, testObj2("x".repeat(1024)))[0];
+                assertThat(header).as(codec).isNotEqualTo((byte) '{').isNotEqualTo((byte) '[');
+            }
+        }
+    }
+
+    @Test
+    void rejectsEmptyAndTruncatedValues() throws IOException {
+        final ValueCodecs valueCodecs = valueCodecs(JsonValueCodec.NAME, 0);
+        final byte[] encoded = valueCodecs.encode(ClassKey.testObj2, testObj2("id-1"));
+
+        assertThatThrownBy(() -> valueCodecs.decode(ClassKey.testObj2, new byte[0], TestObj2.class))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> valueCodecs.decode(ClassKey.testObj2, new byte[]{encoded[0], 0, 0}, TestObj2.class))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static ValueCodecs valueCodecs(String codec, int compressionThresholdBytes) {
+        final CacheDetailsConfig.CacheDetails defaults = new CacheDetailsConfig.CacheDetails();
+        defaults.setCodec(codec);
+        defaults.setCompressionThresholdBytes(compressionThresholdBytes);
+        final CacheDetailsConfig cacheDetailsConfig = new CacheDetailsConfig();
+        cacheDetailsConfig.setDefaultConfig(defaults);
+        final JsonValueCodec json = new JsonValueCodec();
+        return new ValueCodecs(List.of(json, new SmileValueCodec(), new AvroValueCodec()), json,
+                new CompressionStats(), cacheDetailsConfig);
+    }
+
+    private static TestObj2 testObj2(String id) {
+        final TestObj2 value = new TestObj2();
+        value.setTestString1(id);
+        value.setTestString2("two");
+        value.setTestInteger1(1);
+        value.setTestInteger2(2);
+        return value;
+    }
+}